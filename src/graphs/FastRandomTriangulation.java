@@ -0,0 +1,322 @@
+package graphs;
+
+import graphs.graph.Graph;
+import graphs.graph.GraphVertex;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * A random triangulation of a random point set, generated in O(n log n) time.
+ * The points are the same as those of {@link RandomTriangulation} for the
+ * same Random and triangularOuterface option. They are triangulated by a
+ * sweep from left to right, which connects each point to all hull vertices it
+ * can see, and the result is then varied by a number of random edge flips.
+ * Each flip picks a random edge and flips it if its two triangles form a
+ * strictly convex quadrilateral. The result is fully determined by the given
+ * Random.
+ */
+public class FastRandomTriangulation extends Graph {
+
+    public static final int DEFAULT_FLIPS_PER_VERTEX = 4;
+
+    // The triangles, stored as darts: dart 3t + i goes from corner i of triangle t to corner (i + 1) % 3
+    private int[] corner;
+    private int[] twin;
+    private int nTriangles = 0;
+
+    public FastRandomTriangulation(int n) {
+        this(n, new Random(), false);
+    }
+
+    public FastRandomTriangulation(int n, Random rand) {
+        this(n, rand, false);
+    }
+
+    public FastRandomTriangulation(int n, Random rand, boolean triangularOuterface) {
+        this(n, rand, triangularOuterface, DEFAULT_FLIPS_PER_VERTEX * n);
+    }
+
+    /**
+     * Generates a random triangulation on n vertices, and then attempts the
+     * given number of random edge flips.
+     *
+     * @param n
+     * @param rand
+     * @param triangularOuterface
+     * @param flips
+     */
+    public FastRandomTriangulation(int n, Random rand, boolean triangularOuterface, int flips) {
+        if (flips < 0) {
+            throw new IllegalArgumentException("The number of flips must be non-negative.");
+        }
+
+        if (triangularOuterface) {
+            addVertex(new GraphVertex(-100, -25));
+            addVertex(new GraphVertex(50, 200));
+            addVertex(new GraphVertex(200, -25));
+
+            for (int i = 0; i < n - 3; i++) {
+                addVertex(new GraphVertex(100 * rand.nextDouble(), 100 * rand.nextDouble()));
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                addVertex(new GraphVertex(100 * rand.nextDouble(), 100 * rand.nextDouble()));
+            }
+        }
+
+        int nVertices = getVertices().size();
+        double[] x = new double[nVertices];
+        double[] y = new double[nVertices];
+
+        for (int i = 0; i < nVertices; i++) {
+            x[i] = getVertices().get(i).getX();
+            y[i] = getVertices().get(i).getY();
+        }
+
+        corner = new int[3 * Math.max(0, 2 * nVertices - 5)];
+        twin = new int[corner.length];
+
+        if (sweep(x, y)) {
+            for (int i = 0; i < flips; i++) {
+                tryFlip(rand.nextInt(3 * nTriangles), x, y);
+            }
+
+            for (int dart = 0; dart < 3 * nTriangles; dart++) {
+                if (twin[dart] < dart) {
+                    addEdge(getVertices().get(corner[dart]), getVertices().get(corner[next(dart)]));
+                }
+            }
+        }
+
+        corner = null;
+        twin = null;
+    }
+
+    /**
+     * Triangulates the points. If they are all collinear, they are connected
+     * by a path instead, and false is returned.
+     */
+    private boolean sweep(double[] x, double[] y) {
+        int n = x.length;
+        Integer[] sorted = new Integer[n];
+
+        for (int i = 0; i < n; i++) {
+            sorted[i] = i;
+        }
+
+        Arrays.sort(sorted, Comparator.<Integer>comparingDouble(i -> x[i]).thenComparingDouble(i -> y[i]));
+
+        // Find the first point that is not collinear with the ones before it
+        int k = 2;
+
+        while (k < n && Predicates.orient2d(x[sorted[0]], y[sorted[0]], x[sorted[1]], y[sorted[1]], x[sorted[k]], y[sorted[k]]) == 0) {
+            k++;
+        }
+
+        if (k >= n) {
+            for (int i = 0; i + 1 < n; i++) {
+                if (x[sorted[i]] != x[sorted[i + 1]] || y[sorted[i]] != y[sorted[i + 1]]) {
+                    addEdge(getVertices().get(sorted[i]), getVertices().get(sorted[i + 1]));
+                }
+            }
+
+            return false;
+        }
+
+        // The convex hull, as a counter-clockwise cyclic list, and for each hull vertex v the dart from v to hullNext[v]
+        int[] hullNext = new int[n];
+        int[] hullPrevious = new int[n];
+        int[] hullDart = new int[n];
+
+        // Connect point k to the collinear points before it
+        int apex = sorted[k];
+        boolean left = Predicates.orient2d(x[sorted[0]], y[sorted[0]], x[sorted[1]], y[sorted[1]], x[apex], y[apex]) > 0;
+        int previousDart = -1;
+
+        for (int i = 0; i < k - 1; i++) {
+            int a = sorted[i];
+            int b = sorted[i + 1];
+
+            if (left) {
+                int t = addTriangle(a, b, apex);
+                link(3 * t + 2, previousDart);
+                previousDart = 3 * t + 1;
+                hullDart[a] = 3 * t;
+
+                if (i == 0) {
+                    hullDart[apex] = 3 * t + 2;
+                }
+                if (i == k - 2) {
+                    hullDart[b] = 3 * t + 1;
+                }
+            } else {
+                int t = addTriangle(b, a, apex);
+                link(3 * t + 1, previousDart);
+                previousDart = 3 * t + 2;
+                hullDart[b] = 3 * t;
+
+                if (i == 0) {
+                    hullDart[a] = 3 * t + 1;
+                }
+                if (i == k - 2) {
+                    hullDart[apex] = 3 * t + 2;
+                }
+            }
+        }
+
+        for (int i = 0; i < k; i++) {
+            int a = sorted[i];
+            int b = (i + 1 < k ? sorted[i + 1] : apex);
+
+            if (left) {
+                hullNext[a] = b;
+                hullPrevious[b] = a;
+            } else {
+                hullNext[b] = a;
+                hullPrevious[a] = b;
+            }
+        }
+
+        if (left) {
+            hullNext[apex] = sorted[0];
+            hullPrevious[sorted[0]] = apex;
+        } else {
+            hullNext[sorted[0]] = apex;
+            hullPrevious[apex] = sorted[0];
+        }
+
+        // Add the remaining points from left to right. The last point is always on the hull and visible from the new one.
+        int q = apex;
+
+        for (int i = k + 1; i < n; i++) {
+            int p = sorted[i];
+
+            if (x[p] == x[q] && y[p] == y[q]) {
+                continue; // Duplicate points are left unconnected
+            }
+
+            // Walk counter-clockwise along the edges that p sees
+            int upper = q;
+            int firstUpper = -1;
+            previousDart = -1;
+
+            while (Predicates.orient2d(x[upper], y[upper], x[hullNext[upper]], y[hullNext[upper]], x[p], y[p]) < 0) {
+                int next = hullNext[upper];
+                int t = addTriangle(next, upper, p);
+                link(3 * t, hullDart[upper]);
+                link(3 * t + 1, previousDart);
+                previousDart = 3 * t + 2;
+
+                if (firstUpper < 0) {
+                    firstUpper = 3 * t + 1;
+                }
+
+                upper = next;
+            }
+
+            int upperDart = previousDart;
+
+            // Walk clockwise
+            int lower = q;
+            int firstLower = -1;
+            previousDart = firstUpper;
+
+            while (Predicates.orient2d(x[hullPrevious[lower]], y[hullPrevious[lower]], x[lower], y[lower], x[p], y[p]) < 0) {
+                int previous = hullPrevious[lower];
+                int t = addTriangle(lower, previous, p);
+                link(3 * t, hullDart[previous]);
+                link(3 * t + 2, previousDart);
+                previousDart = 3 * t + 1;
+
+                if (firstLower < 0) {
+                    firstLower = 3 * t + 2;
+                }
+
+                lower = previous;
+            }
+
+            // previousDart is now the dart from lower to p; the dart from p to upper is upperDart, or firstLower if upper is q
+            hullDart[lower] = previousDart;
+            hullDart[p] = (upperDart >= 0 ? upperDart : firstLower);
+            hullNext[lower] = p;
+            hullPrevious[p] = lower;
+            hullNext[p] = upper;
+            hullPrevious[upper] = p;
+            q = p;
+        }
+
+        return true;
+    }
+
+    private int addTriangle(int a, int b, int c) {
+        int t = nTriangles++;
+        corner[3 * t] = a;
+        corner[3 * t + 1] = b;
+        corner[3 * t + 2] = c;
+        twin[3 * t] = -1;
+        twin[3 * t + 1] = -1;
+        twin[3 * t + 2] = -1;
+        return t;
+    }
+
+    private void link(int dart, int other) {
+        twin[dart] = other;
+
+        if (other >= 0) {
+            twin[other] = dart;
+        }
+    }
+
+    private static int next(int dart) {
+        return (dart % 3 == 2 ? dart - 2 : dart + 1);
+    }
+
+    /**
+     * Flips the edge of the given dart if its two triangles form a strictly
+     * convex quadrilateral.
+     */
+    private void tryFlip(int dart, double[] x, double[] y) {
+        int opposite = twin[dart];
+
+        if (opposite < 0) {
+            return; // Hull edge
+        }
+
+        // Triangles abc and bad become cad and dbc
+        int e1 = next(dart);
+        int e2 = next(e1);
+        int f1 = next(opposite);
+        int f2 = next(f1);
+
+        int a = corner[dart];
+        int b = corner[e1];
+        int c = corner[e2];
+        int d = corner[f2];
+
+        if (Predicates.orient2d(x[d], y[d], x[c], y[c], x[a], y[a]) <= 0 || Predicates.orient2d(x[c], y[c], x[d], y[d], x[b], y[b]) <= 0) {
+            return;
+        }
+
+        int twinE1 = twin[e1];
+        int twinE2 = twin[e2];
+        int twinF1 = twin[f1];
+        int twinF2 = twin[f2];
+
+        int t1 = 3 * (dart / 3);
+        int t2 = 3 * (opposite / 3);
+
+        corner[t1] = c;
+        corner[t1 + 1] = a;
+        corner[t1 + 2] = d;
+        corner[t2] = d;
+        corner[t2 + 1] = b;
+        corner[t2 + 2] = c;
+
+        link(t1, twinE2);
+        link(t1 + 1, twinF1);
+        link(t1 + 2, t2 + 2);
+        link(t2, twinF2);
+        link(t2 + 1, twinE1);
+    }
+}
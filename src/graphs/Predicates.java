@@ -0,0 +1,325 @@
+package graphs;
+
+import java.util.Arrays;
+
+/**
+ * Geometric predicates that return the correct sign for all finite inputs.
+ * They are first evaluated in floating point. Only when the result is too
+ * close to zero to be trusted are they recomputed exactly, with the floating
+ * point expansions of Shewchuk ("Adaptive Precision Floating-Point Arithmetic
+ * and Fast Robust Geometric Predicates", 1997). An expansion represents a
+ * number exactly as a sum of doubles of increasing magnitude that do not
+ * overlap, so its sign is the sign of its last component. This requires
+ * IEEE double arithmetic with round-to-even, which the JVM provides on SSE2
+ * hardware.
+ */
+public class Predicates {
+
+    private static final double EPSILON = Math.ulp(1.0) / 2;
+    private static final double SPLITTER = (1 << 27) + 1; // Splits a double into two halves of 26 bits
+    private static final double ORIENT_ERROR_BOUND = (3 + 16 * EPSILON) * EPSILON;
+    private static final double INCIRCLE_ERROR_BOUND = (10 + 96 * EPSILON) * EPSILON;
+
+    /**
+     * Returns a positive value if a, b and c make a counter-clockwise turn, a
+     * negative value if they make a clockwise turn, and zero if they are
+     * collinear. The value is twice the signed area of triangle abc,
+     * approximately.
+     *
+     * @param ax
+     * @param ay
+     * @param bx
+     * @param by
+     * @param cx
+     * @param cy
+     * @return
+     */
+    public static double orient2d(double ax, double ay, double bx, double by, double cx, double cy) {
+        double left = (bx - ax) * (cy - ay);
+        double right = (by - ay) * (cx - ax);
+        double det = left - right;
+
+        // The error can only change the sign if both terms have the same sign
+        if ((left > 0 && right <= 0) || (left < 0 && right >= 0)) {
+            return det;
+        }
+
+        double errorBound = ORIENT_ERROR_BOUND * Math.abs(left + right);
+
+        if (Math.abs(det) >= errorBound) {
+            return det;
+        }
+
+        return orient2dExact(ax, ay, bx, by, cx, cy);
+    }
+
+    private static double orient2dExact(double ax, double ay, double bx, double by, double cx, double cy) {
+        double[] left = product(difference(bx, ax), difference(cy, ay));
+        double[] right = product(difference(by, ay), difference(cx, ax));
+
+        return sign(sum(left, negate(right)));
+    }
+
+    /**
+     * Returns a positive value if d lies inside the circle through a, b and
+     * c, a negative value if it lies outside, and zero if the four points are
+     * cocircular. Points a, b and c must be in counter-clockwise order; if
+     * they are clockwise, the sign is reversed.
+     *
+     * @param ax
+     * @param ay
+     * @param bx
+     * @param by
+     * @param cx
+     * @param cy
+     * @param dx
+     * @param dy
+     * @return
+     */
+    public static double incircle(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy) {
+        double adx = ax - dx;
+        double bdx = bx - dx;
+        double cdx = cx - dx;
+        double ady = ay - dy;
+        double bdy = by - dy;
+        double cdy = cy - dy;
+
+        double bdxcdy = bdx * cdy;
+        double cdxbdy = cdx * bdy;
+        double alift = adx * adx + ady * ady;
+
+        double cdxady = cdx * ady;
+        double adxcdy = adx * cdy;
+        double blift = bdx * bdx + bdy * bdy;
+
+        double adxbdy = adx * bdy;
+        double bdxady = bdx * ady;
+        double clift = cdx * cdx + cdy * cdy;
+
+        double det = alift * (bdxcdy - cdxbdy) + blift * (cdxady - adxcdy) + clift * (adxbdy - bdxady);
+        double permanent = (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * alift
+                + (Math.abs(cdxady) + Math.abs(adxcdy)) * blift
+                + (Math.abs(adxbdy) + Math.abs(bdxady)) * clift;
+
+        if (Math.abs(det) > INCIRCLE_ERROR_BOUND * permanent) {
+            return det;
+        }
+
+        return incircleExact(ax, ay, bx, by, cx, cy, dx, dy);
+    }
+
+    private static double incircleExact(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy) {
+        double[] adx = difference(ax, dx);
+        double[] bdx = difference(bx, dx);
+        double[] cdx = difference(cx, dx);
+        double[] ady = difference(ay, dy);
+        double[] bdy = difference(by, dy);
+        double[] cdy = difference(cy, dy);
+
+        double[] alift = sum(product(adx, adx), product(ady, ady));
+        double[] blift = sum(product(bdx, bdx), product(bdy, bdy));
+        double[] clift = sum(product(cdx, cdx), product(cdy, cdy));
+
+        double[] bc = sum(product(bdx, cdy), negate(product(cdx, bdy)));
+        double[] ca = sum(product(cdx, ady), negate(product(adx, cdy)));
+        double[] ab = sum(product(adx, bdy), negate(product(bdx, ady)));
+
+        return sign(sum(sum(product(alift, bc), product(blift, ca)), product(clift, ab)));
+    }
+
+    /**
+     * Returns true if the closed segments ab and cd have at least one point
+     * in common.
+     *
+     * @param ax
+     * @param ay
+     * @param bx
+     * @param by
+     * @param cx
+     * @param cy
+     * @param dx
+     * @param dy
+     * @return
+     */
+    public static boolean segmentsIntersect(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy) {
+        double abc = Math.signum(orient2d(ax, ay, bx, by, cx, cy));
+        double abd = Math.signum(orient2d(ax, ay, bx, by, dx, dy));
+
+        if (abc * abd > 0) {
+            return false; // c and d lie strictly on the same side of ab
+        }
+
+        double cda = Math.signum(orient2d(cx, cy, dx, dy, ax, ay));
+        double cdb = Math.signum(orient2d(cx, cy, dx, dy, bx, by));
+
+        if (cda * cdb > 0) {
+            return false;
+        }
+
+        if (abc == 0 && abd == 0 && cda == 0 && cdb == 0) {
+            // All four points are collinear: the segments intersect if their bounding boxes do
+            return Math.max(Math.min(ax, bx), Math.min(cx, dx)) <= Math.min(Math.max(ax, bx), Math.max(cx, dx))
+                    && Math.max(Math.min(ay, by), Math.min(cy, dy)) <= Math.min(Math.max(ay, by), Math.max(cy, dy));
+        }
+
+        return true;
+    }
+
+    // Expansion arithmetic. Zero components are left out, so zero is the empty expansion.
+    /**
+     * Returns a - b as an expansion.
+     */
+    private static double[] difference(double a, double b) {
+        double x = a - b;
+        double bVirtual = a - x;
+        double aVirtual = x + bVirtual;
+        double y = (a - aVirtual) + (bVirtual - b);
+
+        return pack(y, x);
+    }
+
+    private static double[] pack(double low, double high) {
+        if (low == 0) {
+            return (high == 0 ? new double[0] : new double[]{high});
+        } else {
+            return new double[]{low, high};
+        }
+    }
+
+    private static double[] negate(double[] e) {
+        double[] result = new double[e.length];
+
+        for (int i = 0; i < e.length; i++) {
+            result[i] = -e[i];
+        }
+
+        return result;
+    }
+
+    private static double sign(double[] e) {
+        return (e.length == 0 ? 0 : Math.signum(e[e.length - 1]));
+    }
+
+    /**
+     * Returns the sum of two expansions, by adding the components of f to e
+     * one by one.
+     */
+    private static double[] sum(double[] e, double[] f) {
+        double[] result = e;
+
+        for (double b : f) {
+            result = grow(result, b);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the sum of expansion e and b (Shewchuk's Grow-Expansion).
+     */
+    private static double[] grow(double[] e, double b) {
+        double[] h = new double[e.length + 1];
+        int length = 0;
+        double q = b;
+
+        for (double component : e) {
+            double x = q + component;
+            double bVirtual = x - q;
+            double aVirtual = x - bVirtual;
+            double y = (q - aVirtual) + (component - bVirtual);
+
+            if (y != 0) {
+                h[length++] = y;
+            }
+
+            q = x;
+        }
+
+        if (q != 0) {
+            h[length++] = q;
+        }
+
+        return (length == h.length ? h : Arrays.copyOf(h, length));
+    }
+
+    /**
+     * Returns the product of expansion e and b (Shewchuk's Scale-Expansion).
+     */
+    private static double[] scale(double[] e, double b) {
+        if (e.length == 0 || b == 0) {
+            return new double[0];
+        }
+
+        double[] h = new double[2 * e.length];
+        int length = 0;
+
+        double bHigh = split(b);
+        double bLow = b - bHigh;
+
+        double q = e[0] * b;
+        double low = productError(e[0], b, q, bHigh, bLow);
+
+        if (low != 0) {
+            h[length++] = low;
+        }
+
+        for (int i = 1; i < e.length; i++) {
+            double product = e[i] * b;
+            double productLow = productError(e[i], b, product, bHigh, bLow);
+
+            // (q, h) = q + productLow
+            double sum = q + productLow;
+            double bVirtual = sum - q;
+            double aVirtual = sum - bVirtual;
+            double y = (q - aVirtual) + (productLow - bVirtual);
+
+            if (y != 0) {
+                h[length++] = y;
+            }
+
+            // (q, h) = product + sum, where |product| >= |sum|
+            q = product + sum;
+            y = sum - (q - product);
+
+            if (y != 0) {
+                h[length++] = y;
+            }
+        }
+
+        if (q != 0) {
+            h[length++] = q;
+        }
+
+        return Arrays.copyOf(h, length);
+    }
+
+    private static double[] product(double[] e, double[] f) {
+        double[] result = new double[0];
+
+        for (double b : f) {
+            result = sum(result, scale(e, b));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the high half of a, such that a - split(a) fits in 26 bits.
+     */
+    private static double split(double a) {
+        double c = SPLITTER * a;
+        return c - (c - a);
+    }
+
+    /**
+     * Returns the rounding error of the product x = a * b, given the halves of
+     * b (Dekker's Two-Product).
+     */
+    private static double productError(double a, double b, double x, double bHigh, double bLow) {
+        double aHigh = split(a);
+        double aLow = a - aHigh;
+        double error = x - aHigh * bHigh - aLow * bHigh - aHigh * bLow;
+
+        return aLow * bLow - error;
+    }
+}
@@ -1,6 +1,5 @@
 package graphs;
 
-import java.awt.geom.Line2D;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -49,15 +48,12 @@ public class RandomTriangulation extends Graph {
 
         Collections.shuffle(pairs, rand);
 
-        // Convert them to edges
-        List<Line2D> edges = new ArrayList<Line2D>();
+        double[] x = new double[n];
+        double[] y = new double[n];
 
-        for (Pair<Integer, Integer> pair : pairs) {
-            // Compute the line
-            edges.add(new Line2D.Double(getVertices().get(pair.getFirst()).getX(),
-                    getVertices().get(pair.getFirst()).getY(),
-                    getVertices().get(pair.getSecond()).getX(),
-                    getVertices().get(pair.getSecond()).getY()));
+        for (int i = 0; i < n; i++) {
+            x[i] = getVertices().get(i).getX();
+            y[i] = getVertices().get(i).getY();
         }
 
         // See which edges we can use without intersecting
@@ -67,14 +63,16 @@ public class RandomTriangulation extends Graph {
         for (int i = 0; i < pairs.size(); i++) {
             int v1 = pairs.get(i).getFirst();
             int v2 = pairs.get(i).getSecond();
-            Line2D edge = edges.get(i);
 
             boolean intersects = false;
 
             // Check if this edge intersects any edges that we added previously (sharing endpoints is ok)
             for (int j = 0; j < i && !intersects; j++) {
-                if (used[j] && !(v1 == pairs.get(j).getFirst() || v1 == pairs.get(j).getSecond() || v2 == pairs.get(j).getFirst() || v2 == pairs.get(j).getSecond())) {
-                    if (edge.intersectsLine(edges.get(j))) {
+                int w1 = pairs.get(j).getFirst();
+                int w2 = pairs.get(j).getSecond();
+
+                if (used[j] && !(v1 == w1 || v1 == w2 || v2 == w1 || v2 == w2)) {
+                    if (Predicates.segmentsIntersect(x[v1], y[v1], x[v2], y[v2], x[w1], y[w1], x[w2], y[w2])) {
                         intersects = true;
                     }
                 }
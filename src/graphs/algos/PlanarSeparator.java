@@ -0,0 +1,726 @@
+package graphs.algos;
+
+import graphs.embedded.EmbeddedGraph;
+import graphs.embedded.EmbeddedVertex;
+import graphs.embedded.HalfEdge;
+import graphs.graph.Edge;
+import graphs.graph.Graph;
+import graphs.graph.GraphVertex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits planar embedded graphs with small vertex separators, in the style of
+ * Lipton and Tarjan, and uses them to partition a graph into k parts of equal
+ * size with few vertices on the boundaries between parts.
+ * <p>
+ * To separate a connected piece, two candidates are compared. The first is a
+ * single level of a breadth-first search from a peripheral vertex. The second
+ * is a fundamental cycle of a breadth-first tree from a central vertex: a
+ * non-tree edge together with the tree paths from its endpoints to their
+ * common ancestor. The faces inside such a cycle form a subtree of the dual
+ * spanning tree formed by the non-tree edges, so the number of vertices
+ * inside can be found from subtree weights. The smallest candidate that
+ * leaves at most 2/3 of the piece on either side is used. On meshes, where
+ * the search depth is O(sqrt n), both kinds of separator have size
+ * O(sqrt n).
+ * <p>
+ * A partition is computed by recursive bisection. The pieces of the current
+ * set are packed into the two halves, largest first, and a piece is only
+ * separated when it does not fit. The two halves are partitioned in
+ * parallel.
+ * <p>
+ * The marks of the darts of the graph are overwritten. An instance must not
+ * be used by multiple threads at the same time.
+ */
+public class PlanarSeparator {
+
+    private static final int MAX_CYCLE_CANDIDATES = 16;
+
+    private final EmbeddedVertex[] vertices;
+    // The darts leaving vertex v are first[v] .. first[v + 1] - 1, in clockwise order
+    private final int[] first;
+    private final int[] target;
+    private final int[] reverse;
+    // Scratch space. Concurrent tasks work on disjoint sets of vertices and only use the entries of their own vertices and darts.
+    private final int[] label;
+    private final int[] distance;
+    private final int[] parent; // The tree dart into each vertex, or -1 for the root
+    private final int[] vertexFace;
+    private final int[] dartFace;
+    private final AtomicInteger labels = new AtomicInteger();
+
+    public PlanarSeparator(EmbeddedGraph graph) {
+        vertices = graph.getVertices().toArray(new EmbeddedVertex[0]);
+        int n = vertices.length;
+
+        IdentityHashMap<EmbeddedVertex, Integer> index = new IdentityHashMap<>(n);
+
+        for (int v = 0; v < n; v++) {
+            index.put(vertices[v], v);
+        }
+
+        first = new int[n + 1];
+
+        for (int v = 0; v < n; v++) {
+            first[v + 1] = first[v] + (vertices[v].getDart() == null ? 0 : vertices[v].getDegree());
+        }
+
+        int nDarts = first[n];
+        HalfEdge[] darts = new HalfEdge[nDarts];
+        target = new int[nDarts];
+        reverse = new int[nDarts];
+
+        for (int v = 0; v < n; v++) {
+            HalfEdge start = vertices[v].getDart();
+
+            if (start == null) {
+                continue;
+            }
+
+            int position = first[v];
+            HalfEdge dart = start;
+
+            do {
+                dart.setMark(position);
+                darts[position] = dart;
+                target[position] = index.get(dart.getDestination());
+                position++;
+                dart = dart.getTwin().getNext();
+            } while (dart != start);
+        }
+
+        for (int d = 0; d < nDarts; d++) {
+            reverse[d] = darts[d].getTwin().getMark();
+        }
+
+        label = new int[n];
+        distance = new int[n];
+        parent = new int[n];
+        vertexFace = new int[n];
+        dartFace = new int[nDarts];
+    }
+
+    /**
+     * Returns a small set of vertices whose removal splits the largest
+     * connected component of the graph into pieces of at most 2/3 of its
+     * size, if such a set is found.
+     *
+     * @return
+     */
+    public List<EmbeddedVertex> findSeparator() {
+        int id = labels.incrementAndGet();
+        int[] all = new int[vertices.length];
+
+        for (int v = 0; v < all.length; v++) {
+            all[v] = v;
+            label[v] = id;
+        }
+
+        int[] largest = new int[0];
+
+        for (int[] piece : components(all, id)) {
+            if (piece.length > largest.length) {
+                largest = piece;
+            }
+        }
+
+        List<EmbeddedVertex> result = new ArrayList<>();
+
+        if (largest.length > 2) {
+            for (int v : separate(largest, label[largest[0]], 2 * largest.length / 3, largest.length / 2)) {
+                result.add(vertices[v]);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Divides the vertices into k parts whose sizes differ by at most one.
+     * Each part is returned as a graph with the edges between its vertices,
+     * listed in clockwise order around each vertex.
+     *
+     * @param k
+     * @return
+     */
+    public List<Part> partition(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("The number of parts must be positive.");
+        }
+
+        int n = vertices.length;
+        int[] all = new int[n];
+        int[] part = new int[n];
+
+        for (int v = 0; v < n; v++) {
+            all[v] = v;
+        }
+
+        ForkJoinPool.commonPool().invoke(new Bisection(all, k, 0, part));
+
+        return buildParts(k, part);
+    }
+
+    public static class Part {
+
+        private final Graph graph;
+        private final Map<GraphVertex, EmbeddedVertex> vertexMap;
+        private final Map<GraphVertex, List<Integer>> boundary;
+
+        Part(Graph graph, Map<GraphVertex, EmbeddedVertex> vertexMap, Map<GraphVertex, List<Integer>> boundary) {
+            this.graph = graph;
+            this.vertexMap = vertexMap;
+            this.boundary = boundary;
+        }
+
+        public Graph getGraph() {
+            return graph;
+        }
+
+        /**
+         * Maps each vertex of this part to the vertex of the original graph.
+         *
+         * @return
+         */
+        public Map<GraphVertex, EmbeddedVertex> getVertexMap() {
+            return vertexMap;
+        }
+
+        /**
+         * Maps each vertex of this part that is adjacent to another part to
+         * the sorted indices of the parts it is adjacent to.
+         *
+         * @return
+         */
+        public Map<GraphVertex, List<Integer>> getBoundary() {
+            return boundary;
+        }
+    }
+
+    private class Bisection extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int[] members;
+        private final int parts;
+        private final int firstPart;
+        private final int[] part;
+
+        Bisection(int[] members, int parts, int firstPart, int[] part) {
+            this.members = members;
+            this.parts = parts;
+            this.firstPart = firstPart;
+            this.part = part;
+        }
+
+        @Override
+        protected void compute() {
+            if (parts == 1) {
+                for (int v : members) {
+                    part[v] = firstPart;
+                }
+
+                return;
+            }
+
+            int id = labels.incrementAndGet();
+
+            for (int v : members) {
+                label[v] = id;
+            }
+
+            int leftParts = parts / 2;
+            int[] room = {(int) ((long) members.length * leftParts / parts), 0};
+            room[1] = members.length - room[0];
+            int[][] halves = {new int[room[0]], new int[room[1]]};
+            int[] size = new int[2];
+            int[] halfId = {labels.incrementAndGet(), labels.incrementAndGet()};
+
+            // Place the pieces, largest first, in the half with the most room. Pieces that do not fit are separated.
+            PriorityQueue<int[]> pieces = new PriorityQueue<>((a, b) -> Integer.compare(b.length, a.length));
+            pieces.addAll(components(members, id));
+
+            List<int[]> loose = new ArrayList<>();
+
+            while (!pieces.isEmpty()) {
+                int[] piece = pieces.poll();
+                int half = (room[0] - size[0] >= room[1] - size[1] ? 0 : 1);
+
+                if (piece.length <= room[half] - size[half]) {
+                    for (int v : piece) {
+                        label[v] = halfId[half];
+                        halves[half][size[half]++] = v;
+                    }
+                } else if (piece.length <= 2) {
+                    loose.add(piece);
+                } else {
+                    // Try to split off a side that fills the half, but never accept more than 2/3 on one side
+                    int maxSide = Math.max((piece.length + 1) / 2, Math.min(2 * piece.length / 3, room[half] - size[half]));
+                    int pieceId = label[piece[0]];
+                    int[] separator = separate(piece, pieceId, maxSide, maxSide);
+                    int separatorId = labels.incrementAndGet();
+
+                    for (int v : separator) {
+                        label[v] = separatorId;
+                    }
+
+                    loose.add(separator);
+                    pieces.addAll(components(piece, pieceId));
+                }
+            }
+
+            // Fill up the halves with the separator vertices, preferring the half with most of their neighbours
+            for (int[] vertexList : loose) {
+                for (int v : vertexList) {
+                    int balance = 0;
+
+                    for (int d = first[v]; d < first[v + 1]; d++) {
+                        if (label[target[d]] == halfId[0]) {
+                            balance++;
+                        } else if (label[target[d]] == halfId[1]) {
+                            balance--;
+                        }
+                    }
+
+                    int half = (balance > 0 || (balance == 0 && room[0] - size[0] >= room[1] - size[1]) ? 0 : 1);
+
+                    if (size[half] == room[half]) {
+                        half = 1 - half;
+                    }
+
+                    label[v] = halfId[half];
+                    halves[half][size[half]++] = v;
+                }
+            }
+
+            ForkJoinTask.invokeAll(
+                    new Bisection(halves[0], leftParts, firstPart, part),
+                    new Bisection(halves[1], parts - leftParts, firstPart + leftParts, part));
+        }
+    }
+
+    /**
+     * Returns the connected components of the subgraph induced by the given
+     * vertices that have the given label. Each component gets a new label.
+     */
+    private List<int[]> components(int[] members, int id) {
+        List<int[]> result = new ArrayList<>();
+        int[] queue = new int[members.length];
+
+        for (int v : members) {
+            if (label[v] != id) {
+                continue;
+            }
+
+            int componentId = labels.incrementAndGet();
+            int head = 0;
+            int tail = 0;
+
+            label[v] = componentId;
+            queue[tail++] = v;
+
+            while (head < tail) {
+                int u = queue[head++];
+
+                for (int d = first[u]; d < first[u + 1]; d++) {
+                    int w = target[d];
+
+                    if (label[w] == id) {
+                        label[w] = componentId;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+
+            result.add(Arrays.copyOf(queue, tail));
+        }
+
+        return result;
+    }
+
+    /**
+     * Performs a breadth-first search from the given root through the given
+     * connected component, whose vertices have the given label, setting their
+     * distance and parent. Returns the vertices in the order they were found.
+     */
+    private int[] search(int root, int[] component, int id) {
+        for (int v : component) {
+            parent[v] = -2; // Not found yet
+        }
+
+        int[] order = new int[component.length];
+        int head = 0;
+        int tail = 0;
+
+        order[tail++] = root;
+        distance[root] = 0;
+        parent[root] = -1;
+
+        while (head < tail) {
+            int u = order[head++];
+
+            for (int d = first[u]; d < first[u + 1]; d++) {
+                int w = target[d];
+
+                if (label[w] == id && parent[w] == -2) {
+                    distance[w] = distance[u] + 1;
+                    parent[w] = d;
+                    order[tail++] = w;
+                }
+            }
+        }
+
+        return order;
+    }
+
+    /**
+     * Returns a separator of the given connected component, whose vertices
+     * all have the given label. The smallest separator that leaves at most
+     * maxSide vertices on either side is preferred, and among those of the
+     * same size, the one whose largest side is closest to goal. If there is
+     * none, the one with the smallest largest side is returned.
+     */
+    private int[] separate(int[] component, int id, int maxSide, int goal) {
+        int n = component.length;
+
+        // Find a peripheral vertex and search from it for the level separator
+        int[] order = search(component[0], component, id);
+        int peripheral = order[n - 1];
+        order = search(peripheral, component, id);
+        int far = order[n - 1];
+        int depth = distance[far];
+
+        int[] levelSize = new int[depth + 1];
+
+        for (int v : component) {
+            levelSize[distance[v]]++;
+        }
+
+        int bestLevel = -1;
+        int bestLevelWorst = Integer.MAX_VALUE;
+        int below = 0;
+
+        for (int l = 0; l <= depth; l++) {
+            int worst = Math.max(below, n - below - levelSize[l]);
+
+            if (isBetter(levelSize[l], worst, bestLevel < 0 ? 0 : levelSize[bestLevel], bestLevelWorst, maxSide, goal)) {
+                bestLevel = l;
+                bestLevelWorst = worst;
+            }
+
+            below += levelSize[l];
+        }
+
+        int[] levelSeparator = new int[levelSize[bestLevel]];
+        int count = 0;
+
+        for (int v : component) {
+            if (distance[v] == bestLevel) {
+                levelSeparator[count++] = v;
+            }
+        }
+
+        // Search again from the middle of the longest path, to keep the fundamental cycles short
+        int center = far;
+
+        for (int i = 0; i < depth / 2; i++) {
+            center = target[reverse[parent[center]]];
+        }
+
+        search(center, component, id);
+
+        int[] cycleSeparator = findCycleSeparator(component, id, maxSide, goal, bestLevelWorst, levelSeparator.length);
+
+        return (cycleSeparator == null ? levelSeparator : cycleSeparator);
+    }
+
+    /**
+     * Returns true if a separator of the given size, whose largest side has
+     * the given size, is better than the current best one.
+     */
+    private static boolean isBetter(int size, int worst, int bestSize, int bestWorst, int maxSide, int goal) {
+        boolean balanced = worst <= maxSide;
+        boolean bestBalanced = bestWorst <= maxSide;
+
+        if (balanced != bestBalanced) {
+            return balanced;
+        } else if (balanced) {
+            return size < bestSize || (size == bestSize && Math.abs(worst - goal) < Math.abs(bestWorst - goal));
+        } else {
+            return worst < bestWorst || (worst == bestWorst && size < bestSize);
+        }
+    }
+
+    /**
+     * Finds the best fundamental cycle of the current search tree. Returns
+     * null if it is not better than the given separator.
+     */
+    private int[] findCycleSeparator(int[] component, int id, int maxSide, int goal, int bestWorst, int bestSize) {
+        int n = component.length;
+
+        // Trace the faces of the component
+        int nDarts = 0;
+
+        for (int v : component) {
+            for (int d = first[v]; d < first[v + 1]; d++) {
+                dartFace[d] = -1;
+                nDarts++;
+            }
+        }
+
+        int[] faceDarts = new int[nDarts];
+        int[] faceFirst = new int[nDarts + 1];
+        int nFaces = 0;
+        int length = 0;
+
+        for (int v : component) {
+            for (int d = first[v]; d < first[v + 1]; d++) {
+                if (dartFace[d] >= 0 || label[target[d]] != id) {
+                    continue;
+                }
+
+                faceFirst[nFaces] = length;
+                int walk = d;
+
+                do {
+                    dartFace[walk] = nFaces;
+                    faceDarts[length++] = walk;
+                    walk = nextInFace(walk, id);
+                } while (walk != d);
+
+                nFaces++;
+            }
+        }
+
+        faceFirst[nFaces] = length;
+
+        if (nFaces < 2) {
+            return null; // The component is a tree
+        }
+
+        // The duals of the non-tree edges form a spanning tree of the faces
+        int[] faceParent = new int[nFaces];
+        int[] faceParentDart = new int[nFaces]; // The dart of the parent edge on the boundary of the child
+        int[] faceOrder = new int[nFaces];
+        Arrays.fill(faceParent, -2);
+        faceParent[0] = -1;
+        faceOrder[0] = 0;
+        int head = 0;
+        int tail = 1;
+
+        while (head < tail) {
+            int f = faceOrder[head++];
+
+            for (int i = faceFirst[f]; i < faceFirst[f + 1]; i++) {
+                int d = faceDarts[i];
+
+                if (isTreeDart(d)) {
+                    continue;
+                }
+
+                int g = dartFace[reverse[d]];
+
+                if (faceParent[g] == -2) {
+                    faceParent[g] = f;
+                    faceParentDart[g] = reverse[d];
+                    faceOrder[tail++] = g;
+                }
+            }
+        }
+
+        // Each vertex is counted in the face of its first dart
+        int[] weight = new int[nFaces];
+        int[] subtreeFaces = new int[nFaces];
+
+        for (int v : component) {
+            for (int d = first[v]; d < first[v + 1]; d++) {
+                if (label[target[d]] == id) {
+                    vertexFace[v] = dartFace[d];
+                    weight[dartFace[d]]++;
+                    break;
+                }
+            }
+        }
+
+        for (int i = tail - 1; i >= 0; i--) {
+            int f = faceOrder[i];
+            subtreeFaces[f]++;
+
+            if (faceParent[f] >= 0) {
+                weight[faceParent[f]] += weight[f];
+                subtreeFaces[faceParent[f]] += subtreeFaces[f];
+            }
+        }
+
+        // Number the faces in depth-first order, so each subtree is an interval
+        int[] pre = new int[nFaces];
+        int[] nextChild = new int[nFaces];
+        nextChild[0] = 1;
+
+        for (int i = 1; i < tail; i++) {
+            int f = faceOrder[i];
+            int p = faceParent[f];
+            pre[f] = nextChild[p];
+            nextChild[p] += subtreeFaces[f];
+            nextChild[f] = pre[f] + 1;
+        }
+
+        // Evaluate the cycles whose inside is closest to half of the weight
+        long[] candidates = new long[tail - 1];
+
+        for (int i = 1; i < tail; i++) {
+            int f = faceOrder[i];
+            candidates[i - 1] = ((long) Math.abs(2 * weight[f] - n) << 32) | f;
+        }
+
+        Arrays.sort(candidates);
+
+        int[] best = null;
+        int[] cycle = new int[n];
+
+        for (int c = 0; c < Math.min(MAX_CYCLE_CANDIDATES, candidates.length); c++) {
+            int f = (int) candidates[c];
+            int dart = faceParentDart[f];
+            int cycleLength = fundamentalCycle(target[reverse[dart]], target[dart], cycle);
+
+            int inside = weight[f];
+
+            for (int i = 0; i < cycleLength; i++) {
+                int p = pre[vertexFace[cycle[i]]];
+
+                if (pre[f] <= p && p < pre[f] + subtreeFaces[f]) {
+                    inside--;
+                }
+            }
+
+            int worst = Math.max(inside, n - cycleLength - inside);
+
+            if (isBetter(cycleLength, worst, best == null ? bestSize : best.length, bestWorst, maxSide, goal)) {
+                best = Arrays.copyOf(cycle, cycleLength);
+                bestWorst = worst;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Returns the next dart on the face of the given dart, in the subgraph
+     * induced by the vertices with the given label.
+     */
+    private int nextInFace(int dart, int id) {
+        int w = target[dart];
+        int d = reverse[dart];
+
+        do {
+            d = (d + 1 < first[w + 1] ? d + 1 : first[w]);
+        } while (label[target[d]] != id);
+
+        return d;
+    }
+
+    private boolean isTreeDart(int dart) {
+        return parent[target[dart]] == dart || parent[target[reverse[dart]]] == reverse[dart];
+    }
+
+    /**
+     * Stores the vertices of the cycle formed by the tree paths from u and v
+     * to their common ancestor, and returns the number of vertices.
+     */
+    private int fundamentalCycle(int u, int v, int[] cycle) {
+        int length = 0;
+
+        while (distance[u] > distance[v]) {
+            cycle[length++] = u;
+            u = target[reverse[parent[u]]];
+        }
+
+        while (distance[v] > distance[u]) {
+            cycle[length++] = v;
+            v = target[reverse[parent[v]]];
+        }
+
+        while (u != v) {
+            cycle[length++] = u;
+            cycle[length++] = v;
+            u = target[reverse[parent[u]]];
+            v = target[reverse[parent[v]]];
+        }
+
+        cycle[length++] = u;
+        return length;
+    }
+
+    private List<Part> buildParts(int k, int[] part) {
+        int n = vertices.length;
+        List<Graph> graphs = new ArrayList<>(k);
+        List<Map<GraphVertex, EmbeddedVertex>> vertexMaps = new ArrayList<>(k);
+        List<Map<GraphVertex, List<Integer>>> boundaries = new ArrayList<>(k);
+
+        for (int p = 0; p < k; p++) {
+            graphs.add(new Graph());
+            vertexMaps.add(new IdentityHashMap<>());
+            boundaries.add(new IdentityHashMap<>());
+        }
+
+        GraphVertex[] graphVertices = new GraphVertex[n];
+
+        for (int v = 0; v < n; v++) {
+            graphVertices[v] = new GraphVertex(vertices[v].getX(), vertices[v].getY());
+            graphs.get(part[v]).addVertex(graphVertices[v]);
+            vertexMaps.get(part[v]).put(graphVertices[v], vertices[v]);
+        }
+
+        // Create each edge at its endpoint with the lower index, and add it to both endpoints in clockwise order
+        Edge[] edges = new Edge[first[n]];
+
+        for (int v = 0; v < n; v++) {
+            List<Integer> adjacentParts = null;
+
+            for (int d = first[v]; d < first[v + 1]; d++) {
+                int w = target[d];
+
+                if (part[w] == part[v]) {
+                    if (v < w) {
+                        edges[d] = new Edge(graphVertices[v], graphVertices[w]);
+                        graphs.get(part[v]).getEdges().add(edges[d]);
+                    } else {
+                        edges[d] = edges[reverse[d]];
+                    }
+
+                    graphVertices[v].addEdge(edges[d]);
+                } else {
+                    if (adjacentParts == null) {
+                        adjacentParts = new ArrayList<>();
+                    }
+
+                    if (!adjacentParts.contains(part[w])) {
+                        adjacentParts.add(part[w]);
+                    }
+                }
+            }
+
+            if (adjacentParts != null) {
+                Collections.sort(adjacentParts);
+                boundaries.get(part[v]).put(graphVertices[v], adjacentParts);
+            }
+        }
+
+        List<Part> result = new ArrayList<>(k);
+
+        for (int p = 0; p < k; p++) {
+            result.add(new Part(graphs.get(p), vertexMaps.get(p), boundaries.get(p)));
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,196 @@
+package graphs.embedded;
+
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+/**
+ * The dual of a {@link CompactEmbeddedGraph}, as a view on its arrays. Each
+ * face of the primal graph is a dual vertex and each primal edge is a dual
+ * edge, between the faces on either side of it. Dual darts have the same
+ * indices as the primal darts they cross: dual dart d goes from face(d) to
+ * face(twin(d)), and the dual darts around a dual vertex are the primal darts
+ * around the face, in counter-clockwise order.
+ * <p>
+ * Creating the view takes constant time. Face centroids are computed once, on
+ * first use, and the view can hold any number of attribute columns indexed by
+ * face. As the primal graph cannot change, none of these become stale.
+ */
+public class CompactDualGraph {
+
+    private final CompactEmbeddedGraph primal;
+    private volatile double[] centroidX;
+    private volatile double[] centroidY;
+    private final HashMap<String, double[]> doubleColumns = new HashMap<>();
+    private final HashMap<String, int[]> intColumns = new HashMap<>();
+
+    public CompactDualGraph(CompactEmbeddedGraph primal) {
+        this.primal = primal;
+    }
+
+    public CompactEmbeddedGraph getPrimal() {
+        return primal;
+    }
+
+    public int getVertexCount() {
+        return primal.getFaceCount();
+    }
+
+    public int getEdgeCount() {
+        return primal.getEdgeCount();
+    }
+
+    /**
+     * Returns a dual dart leaving the given dual vertex, or -1 if it has none.
+     *
+     * @param vertex
+     * @return
+     */
+    public int getDart(int vertex) {
+        return primal.getFaceDart(vertex);
+    }
+
+    /**
+     * Returns the next dual dart around the source of the given dual dart, in
+     * counter-clockwise order.
+     *
+     * @param dart
+     * @return
+     */
+    public int nextAroundSource(int dart) {
+        return primal.next(dart);
+    }
+
+    public int source(int dart) {
+        return primal.face(dart);
+    }
+
+    public int target(int dart) {
+        return primal.face(dart ^ 1);
+    }
+
+    public int getDegree(int vertex) {
+        return primal.getFaceSize(vertex);
+    }
+
+    public double getCentroidX(int vertex) {
+        computeCentroids();
+        return centroidX[vertex];
+    }
+
+    public double getCentroidY(int vertex) {
+        computeCentroids();
+        return centroidY[vertex];
+    }
+
+    /**
+     * Returns the column of doubles with the given name, with one entry per
+     * dual vertex. The column is created, filled with zeroes, on first use.
+     *
+     * @param name
+     * @return
+     */
+    public synchronized double[] getDoubleColumn(String name) {
+        double[] column = doubleColumns.get(name);
+
+        if (column == null) {
+            column = new double[getVertexCount()];
+            doubleColumns.put(name, column);
+        }
+
+        return column;
+    }
+
+    /**
+     * Returns the column of integers with the given name, with one entry per
+     * dual vertex. The column is created, filled with zeroes, on first use.
+     *
+     * @param name
+     * @return
+     */
+    public synchronized int[] getIntColumn(String name) {
+        int[] column = intColumns.get(name);
+
+        if (column == null) {
+            column = new int[getVertexCount()];
+            intColumns.put(name, column);
+        }
+
+        return column;
+    }
+
+    public synchronized void removeColumn(String name) {
+        doubleColumns.remove(name);
+        intColumns.remove(name);
+    }
+
+    private void computeCentroids() {
+        if (centroidY != null) {
+            return;
+        }
+
+        synchronized (this) {
+            if (centroidY != null) {
+                return;
+            }
+
+            int n = getVertexCount();
+            double[] cx = new double[n];
+            double[] cy = new double[n];
+
+            IntStream.range(0, n).parallel().forEach(f -> computeCentroid(f, cx, cy));
+
+            centroidX = cx;
+            centroidY = cy; // Written last, as it signals that both are ready
+        }
+    }
+
+    /**
+     * Computes the centroid of the area of the given face. For faces without
+     * area, the average of the vertices is used instead.
+     */
+    private void computeCentroid(int face, double[] cx, double[] cy) {
+        int dart = primal.getFaceDart(face);
+
+        if (dart < 0) {
+            cx[face] = 0;
+            cy[face] = 0;
+            return;
+        }
+
+        double area = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double vertexSumX = 0;
+        double vertexSumY = 0;
+        int count = 0;
+        int walkDart = dart;
+
+        do {
+            int v = primal.origin(walkDart);
+            int next = primal.destination(walkDart);
+            double x = primal.getX(v);
+            double y = primal.getY(v);
+            double nextX = primal.getX(next);
+            double nextY = primal.getY(next);
+
+            double areaIncrement = x * nextY - nextX * y;
+
+            area += areaIncrement;
+            sumX += (x + nextX) * areaIncrement;
+            sumY += (y + nextY) * areaIncrement;
+            vertexSumX += x;
+            vertexSumY += y;
+            count++;
+
+            walkDart = primal.next(walkDart);
+        } while (walkDart != dart);
+
+        if (area != 0) {
+            cx[face] = sumX / (3 * area);
+            cy[face] = sumY / (3 * area);
+        } else {
+            cx[face] = vertexSumX / count;
+            cy[face] = vertexSumY / count;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package graphs.embedded;
+
+import java.util.IdentityHashMap;
+
+/**
+ * A doubly-connected edge list stored in arrays, for embedded graphs that are
+ * too large for the object-based {@link EmbeddedGraph}. Vertices, darts and
+ * faces are identified by their index. The two darts of an edge have indices
+ * 2i and 2i + 1, so the twin of dart d is d ^ 1 and does not need to be
+ * stored. All other references are stored in int columns, where -1 means that
+ * the reference is not set.
+ * <p>
+ * As in EmbeddedGraph, the darts of a face are ordered counter-clockwise by
+ * next, and the outgoing darts of a vertex are ordered clockwise by
+ * next(twin(d)).
+ */
+public class CompactEmbeddedGraph {
+
+    private final double[] x;
+    private final double[] y;
+    private final int[] vertexDart;
+    private final int[] next;
+    private final int[] previous;
+    private final int[] origin;
+    private final int[] face;
+    private final int[] faceDart;
+    private final int outerFace;
+    private CompactDualGraph dual = null;
+
+    /**
+     * Creates a DCEL from the given columns. The arrays are used directly,
+     * not copied. Vertex columns (x, y, vertexDart) are indexed by vertex,
+     * dart columns (next, previous, origin, face) by dart and faceDart by
+     * face. The number of darts must be even.
+     *
+     * @param x
+     * @param y
+     * @param vertexDart an outgoing dart for each vertex, or -1 for isolated
+     * vertices
+     * @param next
+     * @param previous
+     * @param origin
+     * @param face
+     * @param faceDart a dart on the boundary of each face
+     * @param outerFace the index of the outer face, or -1 if there is none
+     */
+    public CompactEmbeddedGraph(double[] x, double[] y, int[] vertexDart, int[] next, int[] previous, int[] origin, int[] face, int[] faceDart, int outerFace) {
+        if (y.length != x.length || vertexDart.length != x.length) {
+            throw new IllegalArgumentException("Vertex columns must have the same length.");
+        }
+
+        if (next.length % 2 != 0 || previous.length != next.length || origin.length != next.length || face.length != next.length) {
+            throw new IllegalArgumentException("Dart columns must have the same, even length.");
+        }
+
+        if (outerFace < -1 || outerFace >= faceDart.length) {
+            throw new IllegalArgumentException("Outer face " + outerFace + " out of range.");
+        }
+
+        this.x = x;
+        this.y = y;
+        this.vertexDart = vertexDart;
+        this.next = next;
+        this.previous = previous;
+        this.origin = origin;
+        this.face = face;
+        this.faceDart = faceDart;
+        this.outerFace = outerFace;
+    }
+
+    public int getVertexCount() {
+        return x.length;
+    }
+
+    public int getDartCount() {
+        return next.length;
+    }
+
+    public int getEdgeCount() {
+        return next.length / 2;
+    }
+
+    public int getFaceCount() {
+        return faceDart.length;
+    }
+
+    public double getX(int vertex) {
+        return x[vertex];
+    }
+
+    public double getY(int vertex) {
+        return y[vertex];
+    }
+
+    public int getDart(int vertex) {
+        return vertexDart[vertex];
+    }
+
+    public static int twin(int dart) {
+        return dart ^ 1;
+    }
+
+    public int next(int dart) {
+        return next[dart];
+    }
+
+    public int previous(int dart) {
+        return previous[dart];
+    }
+
+    public int origin(int dart) {
+        return origin[dart];
+    }
+
+    public int destination(int dart) {
+        return origin[dart ^ 1];
+    }
+
+    public int face(int dart) {
+        return face[dart];
+    }
+
+    public int getFaceDart(int face) {
+        return faceDart[face];
+    }
+
+    /**
+     * Returns the index of the outer face, or -1 if there is no outer face.
+     *
+     * @return
+     */
+    public int getOuterFace() {
+        return outerFace;
+    }
+
+    public boolean isOuterFace(int face) {
+        return face == outerFace;
+    }
+
+    /**
+     * Returns the dual of this graph. It is created on the first call and
+     * shares the arrays of this graph, so any cached centroids and attribute
+     * columns are kept between calls.
+     *
+     * @return
+     */
+    public synchronized CompactDualGraph getDual() {
+        if (dual == null) {
+            dual = new CompactDualGraph(this);
+        }
+
+        return dual;
+    }
+
+    /**
+     * Returns the degree of the given vertex.
+     *
+     * @param vertex
+     * @return
+     */
+    public int getDegree(int vertex) {
+        int dart = vertexDart[vertex];
+
+        if (dart < 0) {
+            return 0;
+        }
+
+        int degree = 0;
+        int walkDart = dart;
+
+        do {
+            degree++;
+            walkDart = next[walkDart ^ 1];
+        } while (walkDart != dart);
+
+        return degree;
+    }
+
+    /**
+     * Returns the size (number of vertices) of the given face.
+     *
+     * @param face
+     * @return
+     */
+    public int getFaceSize(int face) {
+        int dart = faceDart[face];
+
+        if (dart < 0) {
+            return 0;
+        }
+
+        int size = 0;
+        int walkDart = dart;
+
+        do {
+            size++;
+            walkDart = next[walkDart];
+        } while (walkDart != dart);
+
+        return size;
+    }
+
+    /**
+     * Converts the given embedded graph to the compact representation. The
+     * marks of the darts of the given graph are overwritten.
+     *
+     * @param graph
+     * @return
+     */
+    public static CompactEmbeddedGraph fromEmbeddedGraph(EmbeddedGraph graph) {
+        int nVertices = graph.getVertices().size();
+        int nDarts = graph.getDarts().size();
+        int nFaces = graph.getFaces().size();
+
+        // Number the vertices and faces. Vertices are equal when their
+        // coordinates are, so we need to compare by identity.
+        IdentityHashMap<EmbeddedVertex, Integer> vertexIndex = new IdentityHashMap<>(nVertices);
+        IdentityHashMap<Face, Integer> faceIndex = new IdentityHashMap<>(nFaces);
+
+        double[] x = new double[nVertices];
+        double[] y = new double[nVertices];
+
+        for (EmbeddedVertex v : graph.getVertices()) {
+            int i = vertexIndex.size();
+            vertexIndex.put(v, i);
+            x[i] = v.getX();
+            y[i] = v.getY();
+        }
+
+        for (Face f : graph.getFaces()) {
+            faceIndex.put(f, faceIndex.size());
+        }
+
+        // Number the darts in twin pairs, using the marks
+        HalfEdge[] darts = new HalfEdge[nDarts];
+
+        for (HalfEdge dart : graph.getDarts()) {
+            dart.setMark(-1);
+        }
+
+        int nNumbered = 0;
+
+        for (HalfEdge dart : graph.getDarts()) {
+            if (dart.getMark() < 0) {
+                if (dart.getTwin() == null || dart.getTwin().getMark() >= 0 || dart.getTwin() == dart) {
+                    throw new IllegalArgumentException("Darts must come in twin pairs.");
+                }
+
+                dart.setMark(nNumbered);
+                darts[nNumbered] = dart;
+                dart.getTwin().setMark(nNumbered + 1);
+                darts[nNumbered + 1] = dart.getTwin();
+                nNumbered += 2;
+            }
+        }
+
+        int[] next = new int[nDarts];
+        int[] previous = new int[nDarts];
+        int[] origin = new int[nDarts];
+        int[] face = new int[nDarts];
+
+        for (int d = 0; d < nDarts; d++) {
+            HalfEdge dart = darts[d];
+            next[d] = (dart.getNext() == null ? -1 : dart.getNext().getMark());
+            previous[d] = (dart.getPrevious() == null ? -1 : dart.getPrevious().getMark());
+            origin[d] = index(vertexIndex, dart.getOrigin());
+            face[d] = index(faceIndex, dart.getFace());
+        }
+
+        int[] vertexDart = new int[nVertices];
+
+        for (EmbeddedVertex v : graph.getVertices()) {
+            vertexDart[vertexIndex.get(v)] = (v.getDart() == null ? -1 : v.getDart().getMark());
+        }
+
+        int[] faceDart = new int[nFaces];
+        int outerFace = -1;
+
+        for (Face f : graph.getFaces()) {
+            int i = faceIndex.get(f);
+            faceDart[i] = (f.getDart() == null ? -1 : f.getDart().getMark());
+
+            if (f.isOuterFace()) {
+                outerFace = i;
+            }
+        }
+
+        return new CompactEmbeddedGraph(x, y, vertexDart, next, previous, origin, face, faceDart, outerFace);
+    }
+
+    private static <T> int index(IdentityHashMap<T, Integer> indices, T element) {
+        if (element == null) {
+            return -1;
+        }
+
+        Integer index = indices.get(element);
+
+        if (index == null) {
+            throw new IllegalArgumentException("Dart refers to an element that is not part of the graph.");
+        }
+
+        return index;
+    }
+
+    /**
+     * Converts this DCEL to the object-based representation.
+     *
+     * @return
+     */
+    public EmbeddedGraph toEmbeddedGraph() {
+        EmbeddedGraph graph = new EmbeddedGraph();
+
+        EmbeddedVertex[] vertices = new EmbeddedVertex[x.length];
+        HalfEdge[] darts = new HalfEdge[next.length];
+        Face[] faces = new Face[faceDart.length];
+
+        for (int v = 0; v < vertices.length; v++) {
+            vertices[v] = new EmbeddedVertex(x[v], y[v]);
+            graph.addVertex(vertices[v]);
+        }
+
+        for (int d = 0; d < darts.length; d++) {
+            darts[d] = new HalfEdge();
+            graph.addDart(darts[d]);
+        }
+
+        for (int f = 0; f < faces.length; f++) {
+            faces[f] = new Face();
+            faces[f].setOuterFace(f == outerFace);
+            graph.addFace(faces[f]);
+        }
+
+        for (int d = 0; d < darts.length; d++) {
+            HalfEdge dart = darts[d];
+            dart.setTwin(darts[d ^ 1]);
+            dart.setNext(next[d] < 0 ? null : darts[next[d]]);
+            dart.setPrevious(previous[d] < 0 ? null : darts[previous[d]]);
+            dart.setOrigin(origin[d] < 0 ? null : vertices[origin[d]]);
+            dart.setFace(face[d] < 0 ? null : faces[face[d]]);
+        }
+
+        for (int v = 0; v < vertices.length; v++) {
+            vertices[v].setDart(vertexDart[v] < 0 ? null : darts[vertexDart[v]]);
+        }
+
+        for (int f = 0; f < faces.length; f++) {
+            faces[f].setDart(faceDart[f] < 0 ? null : darts[faceDart[f]]);
+        }
+
+        return graph;
+    }
+}
@@ -0,0 +1,413 @@
+package graphs.embedded;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Checks the invariants of the DCEL of an embedded graph and reports all
+ * violations, instead of printing the first one like
+ * {@link EmbeddedGraph#verifyDCEL()}.
+ * <p>
+ * A full validation first checks the local invariants of every dart: its
+ * twin, next and previous are consistent, next starts where the dart ends,
+ * and next has the same face. This is done in parallel over ranges of darts.
+ * If all darts pass, the rotation around each vertex and the boundary of each
+ * face are walked, marking their darts, to check that every dart is found
+ * around its origin and on the boundary of its face. The marks of the darts
+ * are overwritten.
+ * <p>
+ * Vertices are compared by identity, as their hash codes depend on their
+ * coordinates, so vertices that were moved after being added to the graph are
+ * still recognised.
+ * <p>
+ * If the graph tracks changes, {@link #validateChanges()} only checks the
+ * darts changed by local edits since the previous call, their neighbours, and
+ * the rotations around their origins. Whole face boundaries are only walked
+ * by a full validation.
+ */
+public class DCELValidator {
+
+    public enum Problem {
+
+        MISSING_TWIN, TWIN_NOT_SYMMETRIC, OWN_TWIN,
+        MISSING_NEXT, NEXT_NOT_LINKED_BACK, OWN_NEXT,
+        MISSING_PREVIOUS, PREVIOUS_NOT_LINKED_BACK,
+        MISSING_ORIGIN, NEXT_DOES_NOT_START_AT_DESTINATION,
+        MISSING_FACE, NEXT_ON_OTHER_FACE,
+        UNKNOWN_DART, UNKNOWN_VERTEX, UNKNOWN_FACE,
+        VERTEX_WITHOUT_DART, VERTEX_DART_HAS_OTHER_ORIGIN, NOT_AROUND_ORIGIN,
+        FACE_WITHOUT_DART, FACE_DART_ON_OTHER_FACE, NOT_ON_FACE_BOUNDARY,
+        NO_SINGLE_OUTER_FACE
+    }
+
+    /**
+     * A violated invariant and the dart, vertex or face where it was found
+     * (null for problems of the graph as a whole).
+     */
+    public static class Violation {
+
+        private final Problem problem;
+        private final Object element;
+
+        public Violation(Problem problem, Object element) {
+            this.problem = problem;
+            this.element = element;
+        }
+
+        public Problem getProblem() {
+            return problem;
+        }
+
+        public Object getElement() {
+            return element;
+        }
+
+        @Override
+        public String toString() {
+            return problem + (element == null ? "" : " at " + element);
+        }
+    }
+
+    public static class Report {
+
+        private final List<Violation> violations;
+        private final int checkedDarts;
+
+        Report(List<Violation> violations, int checkedDarts) {
+            this.violations = Collections.unmodifiableList(violations);
+            this.checkedDarts = checkedDarts;
+        }
+
+        public boolean isValid() {
+            return violations.isEmpty();
+        }
+
+        public List<Violation> getViolations() {
+            return violations;
+        }
+
+        /**
+         * Returns the number of darts whose local invariants were checked.
+         *
+         * @return
+         */
+        public int getCheckedDarts() {
+            return checkedDarts;
+        }
+
+        @Override
+        public String toString() {
+            return (isValid() ? "Valid" : violations.size() + " violations") + " (" + checkedDarts + " darts checked)";
+        }
+    }
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private final EmbeddedGraph graph;
+
+    public DCELValidator(EmbeddedGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Checks the whole DCEL.
+     *
+     * @return
+     */
+    public Report validate() {
+        HalfEdge[] darts = graph.getDarts().toArray(new HalfEdge[0]);
+        EmbeddedVertex[] vertices = graph.getVertices().toArray(new EmbeddedVertex[0]);
+        Face[] faces = graph.getFaces().toArray(new Face[0]);
+        Set<EmbeddedVertex> knownVertices = identitySet(vertices);
+
+        List<Violation> violations = new ArrayList<>(checkDarts(darts, knownVertices));
+
+        int outerFaces = 0;
+
+        for (Face face : faces) {
+            if (face.isOuterFace()) {
+                outerFaces++;
+            }
+        }
+
+        if (faces.length > 0 && outerFaces != 1) {
+            violations.add(new Violation(Problem.NO_SINGLE_OUTER_FACE, null));
+        }
+
+        boolean dartsConsistent = violations.isEmpty();
+
+        violations.addAll(inParallel(vertices.length, (i, found) -> checkVertex(vertices[i], dartsConsistent, found)));
+        violations.addAll(inParallel(faces.length, (i, found) -> checkFace(faces[i], dartsConsistent, found)));
+
+        if (dartsConsistent) {
+            // Every dart must have been marked by the rotation around its origin (1) and the walk around its face (2)
+            violations.addAll(inParallel(darts.length, (i, found) -> {
+                int mark = darts[i].getMark();
+
+                if ((mark & 1) == 0) {
+                    found.add(new Violation(Problem.NOT_AROUND_ORIGIN, darts[i]));
+                } else if ((mark & 2) == 0) {
+                    found.add(new Violation(Problem.NOT_ON_FACE_BOUNDARY, darts[i]));
+                }
+            }));
+        }
+
+        graph.takeTouchedDarts(); // Everything has been checked
+
+        return new Report(violations, darts.length);
+    }
+
+    /**
+     * Checks only the darts that were changed by local edits since the last
+     * validation, together with their neighbours, their origins and faces.
+     *
+     * @return
+     * @throws IllegalStateException if the graph does not track changes
+     */
+    public Report validateChanges() {
+        Set<HalfEdge> touched = graph.takeTouchedDarts();
+
+        if (touched == null) {
+            throw new IllegalStateException("The graph does not track changes.");
+        }
+
+        Set<HalfEdge> allDarts = graph.getDarts();
+        Set<EmbeddedVertex> knownVertices = identitySet(graph.getVertices().toArray(new EmbeddedVertex[0]));
+        Set<HalfEdge> toCheck = new HashSet<>(2 * touched.size());
+        Set<EmbeddedVertex> origins = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (HalfEdge dart : touched) {
+            // The origins of removed darts are checked too, as they may still refer to them
+            if (dart.getOrigin() != null && knownVertices.contains(dart.getOrigin())) {
+                origins.add(dart.getOrigin());
+            }
+
+            if (allDarts.contains(dart)) {
+                toCheck.add(dart);
+                addIfPresent(toCheck, allDarts, dart.getTwin());
+                addIfPresent(toCheck, allDarts, dart.getNext());
+                addIfPresent(toCheck, allDarts, dart.getPrevious());
+            }
+        }
+
+        HalfEdge[] darts = toCheck.toArray(new HalfEdge[0]);
+        List<Violation> violations = new ArrayList<>(checkDarts(darts, knownVertices));
+
+        if (violations.isEmpty()) {
+            Set<Face> faces = new HashSet<>();
+
+            for (HalfEdge dart : darts) {
+                origins.add(dart.getOrigin());
+                faces.add(dart.getFace());
+
+                if (!isAroundOrigin(dart, allDarts.size())) {
+                    violations.add(new Violation(Problem.NOT_AROUND_ORIGIN, dart));
+                }
+            }
+
+            for (EmbeddedVertex v : origins) {
+                checkVertex(v, false, violations);
+            }
+
+            for (Face f : faces) {
+                checkFace(f, false, violations);
+            }
+        }
+
+        return new Report(violations, darts.length);
+    }
+
+    private static void addIfPresent(Set<HalfEdge> set, Set<HalfEdge> allDarts, HalfEdge dart) {
+        if (dart != null && allDarts.contains(dart)) {
+            set.add(dart);
+        }
+    }
+
+    private List<Violation> checkDarts(HalfEdge[] darts, Set<EmbeddedVertex> knownVertices) {
+        return inParallel(darts.length, (i, found) -> checkDart(darts[i], knownVertices, found));
+    }
+
+    private static Set<EmbeddedVertex> identitySet(EmbeddedVertex[] vertices) {
+        Set<EmbeddedVertex> set = Collections.newSetFromMap(new IdentityHashMap<>(vertices.length));
+        Collections.addAll(set, vertices);
+        return set;
+    }
+
+    private interface Check {
+
+        void check(int element, List<Violation> found);
+    }
+
+    /**
+     * Checks elements 0 to n - 1 in parallel chunks and combines the
+     * violations in order.
+     */
+    private static List<Violation> inParallel(int n, Check check) {
+        int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    List<Violation> found = new ArrayList<>();
+
+                    for (int i = c * CHUNK_SIZE; i < Math.min(n, (c + 1) * CHUNK_SIZE); i++) {
+                        check.check(i, found);
+                    }
+
+                    return found;
+                })
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    private void checkDart(HalfEdge dart, Set<EmbeddedVertex> knownVertices, List<Violation> found) {
+        Set<HalfEdge> darts = graph.getDarts();
+
+        dart.setMark(0);
+
+        HalfEdge twin = dart.getTwin();
+
+        if (twin == null) {
+            found.add(new Violation(Problem.MISSING_TWIN, dart));
+        } else if (!darts.contains(twin)) {
+            found.add(new Violation(Problem.UNKNOWN_DART, dart));
+        } else if (twin == dart) {
+            found.add(new Violation(Problem.OWN_TWIN, dart));
+        } else if (twin.getTwin() != dart) {
+            found.add(new Violation(Problem.TWIN_NOT_SYMMETRIC, dart));
+        }
+
+        HalfEdge next = dart.getNext();
+
+        if (next == null) {
+            found.add(new Violation(Problem.MISSING_NEXT, dart));
+        } else if (!darts.contains(next)) {
+            found.add(new Violation(Problem.UNKNOWN_DART, dart));
+        } else if (next == dart) {
+            found.add(new Violation(Problem.OWN_NEXT, dart));
+        } else if (next.getPrevious() != dart) {
+            found.add(new Violation(Problem.NEXT_NOT_LINKED_BACK, dart));
+        }
+
+        HalfEdge previous = dart.getPrevious();
+
+        if (previous == null) {
+            found.add(new Violation(Problem.MISSING_PREVIOUS, dart));
+        } else if (!darts.contains(previous)) {
+            found.add(new Violation(Problem.UNKNOWN_DART, dart));
+        } else if (previous.getNext() != dart) {
+            found.add(new Violation(Problem.PREVIOUS_NOT_LINKED_BACK, dart));
+        }
+
+        if (dart.getOrigin() == null) {
+            found.add(new Violation(Problem.MISSING_ORIGIN, dart));
+        } else if (!knownVertices.contains(dart.getOrigin())) {
+            found.add(new Violation(Problem.UNKNOWN_VERTEX, dart));
+        } else if (twin != null && next != null && next.getOrigin() != twin.getOrigin()) {
+            found.add(new Violation(Problem.NEXT_DOES_NOT_START_AT_DESTINATION, dart));
+        }
+
+        if (dart.getFace() == null) {
+            found.add(new Violation(Problem.MISSING_FACE, dart));
+        } else if (!graph.getFaces().contains(dart.getFace())) {
+            found.add(new Violation(Problem.UNKNOWN_FACE, dart));
+        } else if (next != null && next.getFace() != dart.getFace()) {
+            found.add(new Violation(Problem.NEXT_ON_OTHER_FACE, dart));
+        }
+    }
+
+    /**
+     * Checks the dart of the given vertex. If walk is true, also marks the
+     * darts around the vertex with bit 1. This is only safe if all darts are
+     * locally consistent; the walk gives up after visiting as many darts as
+     * the graph has, in case the rotation does not return to its start.
+     */
+    private void checkVertex(EmbeddedVertex vertex, boolean walk, List<Violation> found) {
+        HalfEdge dart = vertex.getDart();
+
+        if (dart == null) {
+            found.add(new Violation(Problem.VERTEX_WITHOUT_DART, vertex));
+        } else if (!graph.getDarts().contains(dart)) {
+            found.add(new Violation(Problem.UNKNOWN_DART, vertex));
+        } else if (dart.getOrigin() != vertex) {
+            found.add(new Violation(Problem.VERTEX_DART_HAS_OTHER_ORIGIN, vertex));
+        } else if (walk) {
+            HalfEdge walkDart = dart;
+            int steps = 0;
+
+            do {
+                walkDart.setMark(walkDart.getMark() | 1);
+                walkDart = walkDart.getTwin().getNext();
+                steps++;
+            } while (walkDart != dart && steps < graph.getDarts().size());
+
+            if (walkDart != dart) {
+                found.add(new Violation(Problem.NOT_AROUND_ORIGIN, dart));
+            }
+        }
+    }
+
+    /**
+     * Checks the dart of the given face. If walk is true, also marks the darts
+     * around the face with bit 2, giving up after as many darts as the graph
+     * has.
+     */
+    private void checkFace(Face face, boolean walk, List<Violation> found) {
+        HalfEdge dart = face.getDart();
+
+        if (dart == null) {
+            found.add(new Violation(Problem.FACE_WITHOUT_DART, face));
+        } else if (!graph.getDarts().contains(dart)) {
+            found.add(new Violation(Problem.UNKNOWN_DART, face));
+        } else if (dart.getFace() != face) {
+            found.add(new Violation(Problem.FACE_DART_ON_OTHER_FACE, face));
+        } else if (walk) {
+            HalfEdge walkDart = dart;
+            int steps = 0;
+
+            do {
+                walkDart.setMark(walkDart.getMark() | 2);
+                walkDart = walkDart.getNext();
+                steps++;
+            } while (walkDart != dart && steps < graph.getDarts().size());
+
+            if (walkDart != dart) {
+                found.add(new Violation(Problem.NOT_ON_FACE_BOUNDARY, dart));
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given dart is found when walking around its origin,
+     * starting from the dart stored with the origin. Gives up after the given
+     * number of steps, in case the rotation is not a cycle.
+     */
+    private static boolean isAroundOrigin(HalfEdge dart, int maxSteps) {
+        HalfEdge start = dart.getOrigin().getDart();
+
+        if (start == null) {
+            return false;
+        }
+
+        HalfEdge walkDart = start;
+
+        for (int step = 0; step < maxSteps; step++) {
+            if (walkDart == dart) {
+                return true;
+            }
+
+            walkDart = walkDart.getTwin().getNext();
+
+            if (walkDart == start || walkDart == null) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+}
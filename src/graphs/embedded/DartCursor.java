@@ -0,0 +1,102 @@
+package graphs.embedded;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks the outgoing darts of a vertex or the darts of a face without
+ * allocating. A cursor can be reused for any number of walks, and can be used
+ * directly in a for-each loop:
+ * <pre>
+ * DartCursor cursor = new DartCursor();
+ *
+ * for (HalfEdge dart : cursor.aroundFace(face)) {
+ *     ...
+ * }
+ * </pre> Each cursor supports one walk at a time, and the graph should not be
+ * changed during a walk.
+ */
+public class DartCursor implements Iterable<HalfEdge>, Iterator<HalfEdge> {
+
+    private HalfEdge start;
+    private HalfEdge current; // The dart returned by the next call to next, or null at the end
+    private boolean aroundVertex;
+
+    /**
+     * Starts a walk over the outgoing darts of the given vertex, in clockwise
+     * order, starting with the dart that is stored with the vertex.
+     *
+     * @param vertex
+     * @return this cursor
+     */
+    public DartCursor aroundVertex(EmbeddedVertex vertex) {
+        return aroundVertex(vertex.getDart());
+    }
+
+    /**
+     * Starts a walk over the outgoing darts of the origin of the given dart,
+     * in clockwise order, starting with the given dart.
+     *
+     * @param from
+     * @return this cursor
+     */
+    public DartCursor aroundVertex(HalfEdge from) {
+        start = from;
+        current = from;
+        aroundVertex = true;
+        return this;
+    }
+
+    /**
+     * Starts a walk over the darts of the given face, in counter-clockwise
+     * order, starting with the dart that is stored with the face.
+     *
+     * @param face
+     * @return this cursor
+     */
+    public DartCursor aroundFace(Face face) {
+        return aroundFace(face.getDart());
+    }
+
+    /**
+     * Starts a walk over the darts of the face of the given dart, in
+     * counter-clockwise order, starting with the given dart.
+     *
+     * @param from
+     * @return this cursor
+     */
+    public DartCursor aroundFace(HalfEdge from) {
+        start = from;
+        current = from;
+        aroundVertex = false;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return current != null;
+    }
+
+    @Override
+    public HalfEdge next() {
+        if (current == null) {
+            throw new NoSuchElementException();
+        }
+
+        HalfEdge dart = current;
+        HalfEdge nextDart = (aroundVertex ? dart.getTwin().getNext() : dart.getNext());
+        current = (nextDart == start ? null : nextDart);
+
+        return dart;
+    }
+
+    /**
+     * Returns this cursor, so that it can be used in a for-each loop.
+     *
+     * @return
+     */
+    @Override
+    public Iterator<HalfEdge> iterator() {
+        return this;
+    }
+}
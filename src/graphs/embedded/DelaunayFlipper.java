@@ -0,0 +1,132 @@
+package graphs.embedded;
+
+import graphs.Predicates;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Turns a triangulation into the Delaunay triangulation of its vertices by
+ * edge flips (Lawson's algorithm). Edges that may not be locally Delaunay are
+ * kept in a work queue. An edge between two inner triangles is flipped if the
+ * fourth vertex of its quadrilateral lies strictly inside the circumcircle of
+ * one of the triangles, after which the four edges of the quadrilateral are
+ * queued again. The in-circle tests are exact.
+ * <p>
+ * Edges on the outer face or on a face that is not a triangle are never
+ * flipped. The triangles must be oriented counter-clockwise, as they are in
+ * any straight-line embedding. The flips are made with
+ * {@link EmbeddedGraph#flipEdge(HalfEdge)}, so they are recorded when change
+ * tracking is enabled.
+ */
+public class DelaunayFlipper {
+
+    private final EmbeddedGraph graph;
+    private final ArrayDeque<HalfEdge> queue = new ArrayDeque<>();
+    private final Set<HalfEdge> queued = new HashSet<>(); // Contains one dart of each queued edge
+
+    private DelaunayFlipper(EmbeddedGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Flips edges until the graph is a Delaunay triangulation.
+     *
+     * @param graph
+     * @return the number of flips
+     */
+    public static int makeDelaunay(EmbeddedGraph graph) {
+        DelaunayFlipper flipper = new DelaunayFlipper(graph);
+
+        for (HalfEdge dart : graph.getDarts()) {
+            flipper.enqueue(dart);
+        }
+
+        return flipper.flipAll();
+    }
+
+    /**
+     * Restores the Delaunay property after the given vertices were moved in
+     * a graph that was a Delaunay triangulation before. Only the edges around
+     * the moved vertices are checked at first, so the work is proportional to
+     * the number of moved vertices and flips, not to the size of the graph.
+     * The moves must not have turned any triangle inside out.
+     *
+     * @param graph
+     * @param moved
+     * @return the number of flips
+     */
+    public static int makeDelaunay(EmbeddedGraph graph, Collection<EmbeddedVertex> moved) {
+        DelaunayFlipper flipper = new DelaunayFlipper(graph);
+
+        // An edge can only stop being locally Delaunay if one of the four vertices of its quadrilateral moved
+        for (EmbeddedVertex v : moved) {
+            v.forEachDart(dart -> {
+                flipper.enqueue(dart);
+                flipper.enqueue(dart.getNext());
+            });
+        }
+
+        return flipper.flipAll();
+    }
+
+    private void enqueue(HalfEdge dart) {
+        if (!queued.contains(dart) && !queued.contains(dart.getTwin())) {
+            queued.add(dart);
+            queue.add(dart);
+        }
+    }
+
+    private int flipAll() {
+        int flips = 0;
+
+        while (!queue.isEmpty()) {
+            HalfEdge dart = queue.poll();
+            queued.remove(dart);
+
+            if (needsFlip(dart)) {
+                graph.flipEdge(dart);
+                flips++;
+
+                HalfEdge twin = dart.getTwin();
+                enqueue(dart.getNext());
+                enqueue(dart.getPrevious());
+                enqueue(twin.getNext());
+                enqueue(twin.getPrevious());
+            }
+        }
+
+        return flips;
+    }
+
+    /**
+     * Returns true if the edge of the given dart lies between two inner
+     * triangles that form a strictly convex quadrilateral, and is not locally
+     * Delaunay.
+     */
+    private static boolean needsFlip(HalfEdge dart) {
+        HalfEdge twin = dart.getTwin();
+
+        if (!isInnerTriangle(dart) || !isInnerTriangle(twin)) {
+            return false;
+        }
+
+        EmbeddedVertex a = dart.getOrigin();
+        EmbeddedVertex b = twin.getOrigin();
+        EmbeddedVertex c = dart.getPrevious().getOrigin();
+        EmbeddedVertex d = twin.getPrevious().getOrigin();
+
+        if (Predicates.incircle(a.getX(), a.getY(), b.getX(), b.getY(), c.getX(), c.getY(), d.getX(), d.getY()) <= 0) {
+            return false;
+        }
+
+        // The new triangles dca and cdb must be counter-clockwise, which fails only for invalid input
+        return Predicates.orient2d(d.getX(), d.getY(), c.getX(), c.getY(), a.getX(), a.getY()) > 0
+                && Predicates.orient2d(c.getX(), c.getY(), d.getX(), d.getY(), b.getX(), b.getY()) > 0;
+    }
+
+    private static boolean isInnerTriangle(HalfEdge dart) {
+        return !dart.getFace().isOuterFace() && dart.getNext().getNext().getNext() == dart && dart.getNext() != dart;
+    }
+}
@@ -0,0 +1,541 @@
+package graphs.embedded;
+
+import graphs.Predicates;
+import graphs.graph.Graph;
+import graphs.graph.GraphVertex;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Builds the Delaunay triangulation of a point set by randomised incremental
+ * construction, in O(n log n) expected time. The points are inserted in a
+ * biased randomised insertion order: random rounds of doubling size, each
+ * sorted along a Hilbert curve, so that the walk that locates a point,
+ * starting from the last triangle created, is short.
+ * <p>
+ * Each hull edge is closed off by a ghost triangle with a vertex at infinity,
+ * so points outside the hull need no special case. A point conflicts with a
+ * triangle if it lies inside its circumcircle, and with a ghost triangle if
+ * it sees its hull edge from outside. Inserting a point removes all triangles
+ * it conflicts with and connects it to the boundary of the cavity. All tests
+ * use exact predicates.
+ * <p>
+ * The result is built directly as a DCEL, with a face for every triangle and
+ * an outer face. Of several points with the same coordinates, only the one
+ * with the lowest index is connected; the others are left as isolated
+ * vertices. This matches {@link CompactEmbeddedGraph#toEmbeddedGraph()},
+ * which keeps the first of such vertices, as vertices with equal coordinates
+ * are equal. If all points are collinear, they are connected by a path. If
+ * four or more points are cocircular, any of their triangulations may be
+ * returned.
+ */
+public class DelaunayTriangulation {
+
+    // The triangles, stored as darts: dart 3t + i goes from corner i of triangle t to corner (i + 1) % 3.
+    // The vertex at infinity is always corner 2 of a ghost triangle.
+    private final double[] x;
+    private final double[] y;
+    private final int infinite;
+    private int[] corner;
+    private int[] twin;
+    private int[] stamp; // 2s if the triangle is in the cavity of insertion s, 2s + 1 if it is not
+    private int[] lowestCopy = null; // For each inserted vertex, the lowest index of a point at the same position
+    private int nTriangles = 0;
+    private int lastTriangle = 0;
+
+    // Scratch space for the insertions
+    private int[] cavity = new int[16];
+    private int[] boundary = new int[16];
+    private final int[] dartFrom; // For each boundary vertex v, the new dart from v to the inserted point
+    private final int[] dartTo;
+
+    public static CompactEmbeddedGraph triangulate(double[] x, double[] y) {
+        return triangulate(x, y, new Random());
+    }
+
+    /**
+     * Returns the Delaunay triangulation of the given points. Vertex i of the
+     * result is point i. The random generator only affects the numbering of
+     * darts and faces, unless there are cocircular points.
+     *
+     * @param x
+     * @param y
+     * @param rand
+     * @return
+     */
+    public static CompactEmbeddedGraph triangulate(double[] x, double[] y, Random rand) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("The coordinate arrays must have the same length.");
+        }
+
+        return new DelaunayTriangulation(x, y).build(rand);
+    }
+
+    /**
+     * Returns the Delaunay triangulation of the vertices of the given graph,
+     * in the same order. The edges of the graph are ignored.
+     *
+     * @param graph
+     * @return
+     */
+    public static EmbeddedGraph triangulate(Graph graph) {
+        int n = graph.getVertices().size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            GraphVertex v = graph.getVertices().get(i);
+            x[i] = v.getX();
+            y[i] = v.getY();
+        }
+
+        return triangulate(x, y).toEmbeddedGraph();
+    }
+
+    private DelaunayTriangulation(double[] x, double[] y) {
+        this.x = x;
+        this.y = y;
+        infinite = x.length;
+
+        int capacity = 2 * x.length + 4;
+        corner = new int[3 * capacity];
+        twin = new int[3 * capacity];
+        stamp = new int[capacity];
+        dartFrom = new int[x.length + 1];
+        dartTo = new int[x.length + 1];
+    }
+
+    private CompactEmbeddedGraph build(Random rand) {
+        int n = x.length;
+        int[] order = insertionOrder(rand);
+
+        // Find three points that are not collinear for the first triangle
+        int first = (n > 0 ? order[0] : -1);
+        int second = -1;
+        int third = -1;
+
+        for (int i = 1; i < n && third < 0; i++) {
+            int v = order[i];
+
+            if (second < 0) {
+                if (x[v] != x[first] || y[v] != y[first]) {
+                    second = v;
+                }
+            } else if (Predicates.orient2d(x[first], y[first], x[second], y[second], x[v], y[v]) != 0) {
+                third = v;
+            }
+        }
+
+        if (third < 0) {
+            return collinearPath();
+        }
+
+        if (Predicates.orient2d(x[first], y[first], x[second], y[second], x[third], y[third]) < 0) {
+            int temp = second;
+            second = third;
+            third = temp;
+        }
+
+        int t = createTriangle(first, second, third);
+
+        for (int i = 0; i < 3; i++) {
+            int dart = 3 * t + i;
+            int g = createTriangle(corner[next(dart)], corner[dart], infinite);
+            link(3 * g, dart);
+        }
+
+        // Link the ghost triangles around the hull: ghost g + 1 follows ghost g clockwise
+        for (int g = 1; g <= 3; g++) {
+            int following = (g == 3 ? 1 : g + 1);
+            link(3 * g + 2, 3 * following + 1);
+        }
+
+        lastTriangle = t;
+
+        for (int i = 0; i < n; i++) {
+            int v = order[i];
+
+            if (v != first && v != second && v != third) {
+                insert(v, i + 1);
+            }
+        }
+
+        return toCompactGraph();
+    }
+
+    /**
+     * Returns the points in random rounds of doubling size, each sorted along
+     * a Hilbert curve.
+     */
+    private int[] insertionOrder(Random rand) {
+        int n = x.length;
+        int[] shuffled = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            shuffled[i] = i;
+        }
+
+        for (int i = n - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int temp = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = temp;
+        }
+
+        int[] order = new int[n];
+        int end = n;
+
+        while (end > 0) {
+            int start = (end <= 16 ? 0 : end / 2);
+            double[] roundX = new double[end - start];
+            double[] roundY = new double[end - start];
+
+            for (int i = start; i < end; i++) {
+                roundX[i - start] = x[shuffled[i]];
+                roundY[i - start] = y[shuffled[i]];
+            }
+
+            int[] roundOrder = HilbertCurve.order(roundX, roundY);
+
+            for (int i = 0; i < roundOrder.length; i++) {
+                order[start + i] = shuffled[start + roundOrder[i]];
+            }
+
+            end = start;
+        }
+
+        return order;
+    }
+
+    private void insert(int p, int insertion) {
+        int t = locate(p);
+
+        if (t < 0) {
+            // p coincides with vertex -1 - t, which keeps representing both
+            int v = -1 - t;
+
+            if (lowestCopy == null) {
+                lowestCopy = new int[x.length];
+
+                for (int i = 0; i < x.length; i++) {
+                    lowestCopy[i] = i;
+                }
+            }
+
+            lowestCopy[v] = Math.min(lowestCopy[v], p);
+            return;
+        }
+
+        // Find the cavity and its boundary darts, which lie outside the cavity
+        int nCavity = 0;
+        int nBoundary = 0;
+        int nVisited = 0;
+        stamp[t] = 2 * insertion;
+        cavity[nCavity++] = t;
+
+        while (nVisited < nCavity) {
+            int c = cavity[nVisited++];
+
+            for (int i = 0; i < 3; i++) {
+                int outside = twin[3 * c + i];
+                int u = outside / 3;
+
+                if (stamp[u] == 2 * insertion) {
+                    continue;
+                }
+
+                if (stamp[u] != 2 * insertion + 1 && conflicts(u, p)) {
+                    stamp[u] = 2 * insertion;
+                    cavity = ensureCapacity(cavity, nCavity + 1);
+                    cavity[nCavity++] = u;
+                } else {
+                    stamp[u] = 2 * insertion + 1;
+                    boundary = ensureCapacity(boundary, nBoundary + 1);
+                    boundary[nBoundary++] = outside;
+                }
+            }
+        }
+
+        // Replace the cavity by a triangle for each boundary edge, reusing the slots of the removed triangles
+        for (int i = 0; i < nBoundary; i++) {
+            int outside = boundary[i];
+            int a = corner[next(outside)];
+            int b = corner[outside];
+            int slot = (i < nCavity ? cavity[i] : allocateTriangle());
+            setTriangle(slot, a, b, p);
+
+            link(dartOf(slot, a), outside);
+            dartFrom[b] = dartOf(slot, b);
+            dartTo[a] = dartOf(slot, p);
+
+            if (a != infinite && b != infinite) {
+                lastTriangle = slot;
+            }
+        }
+
+        for (int i = 0; i < nBoundary; i++) {
+            int a = corner[next(boundary[i])];
+            link(dartTo[a], dartFrom[a]);
+        }
+    }
+
+    /**
+     * Walks from the last created triangle to the triangle that contains p,
+     * or to a ghost triangle whose hull edge p sees. Returns -1 - v if p
+     * coincides with vertex v.
+     */
+    private int locate(int p) {
+        int t = lastTriangle;
+        boolean moved = true;
+
+        while (moved) {
+            moved = false;
+
+            for (int i = 0; i < 3 && !moved; i++) {
+                int dart = 3 * t + i;
+                int a = corner[dart];
+                int b = corner[next(dart)];
+
+                if (Predicates.orient2d(x[a], y[a], x[b], y[b], x[p], y[p]) < 0) {
+                    t = twin[dart] / 3;
+                    moved = true;
+
+                    if (corner[3 * t + 2] == infinite) {
+                        return t;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            int v = corner[3 * t + i];
+
+            if (x[v] == x[p] && y[v] == y[p]) {
+                return -1 - v;
+            }
+        }
+
+        return t;
+    }
+
+    private boolean conflicts(int t, int p) {
+        int a = corner[3 * t];
+        int b = corner[3 * t + 1];
+        int c = corner[3 * t + 2];
+
+        if (c != infinite) {
+            return Predicates.incircle(x[a], y[a], x[b], y[b], x[c], y[c], x[p], y[p]) > 0;
+        }
+
+        // The hull edge goes from b to a, with the outside on its right
+        double side = Predicates.orient2d(x[a], y[a], x[b], y[b], x[p], y[p]);
+
+        if (side != 0) {
+            return side > 0;
+        }
+
+        // On the line through the hull edge: conflict only if strictly inside the edge
+        if (x[a] != x[b]) {
+            return Math.min(x[a], x[b]) < x[p] && x[p] < Math.max(x[a], x[b]);
+        } else {
+            return Math.min(y[a], y[b]) < y[p] && y[p] < Math.max(y[a], y[b]);
+        }
+    }
+
+    private int createTriangle(int a, int b, int c) {
+        int t = allocateTriangle();
+        setTriangle(t, a, b, c);
+        return t;
+    }
+
+    private int allocateTriangle() {
+        if (3 * (nTriangles + 1) > corner.length) {
+            corner = Arrays.copyOf(corner, 2 * corner.length);
+            twin = Arrays.copyOf(twin, 2 * twin.length);
+            stamp = Arrays.copyOf(stamp, 2 * stamp.length);
+        }
+
+        return nTriangles++;
+    }
+
+    /**
+     * Sets the corners of triangle t to a, b and c in this cyclic order,
+     * rotated so that the vertex at infinity is last.
+     */
+    private void setTriangle(int t, int a, int b, int c) {
+        if (a == infinite) {
+            setCorners(t, b, c, a);
+        } else if (b == infinite) {
+            setCorners(t, c, a, b);
+        } else {
+            setCorners(t, a, b, c);
+        }
+
+        stamp[t] = 0;
+    }
+
+    private void setCorners(int t, int a, int b, int c) {
+        corner[3 * t] = a;
+        corner[3 * t + 1] = b;
+        corner[3 * t + 2] = c;
+        twin[3 * t] = -1;
+        twin[3 * t + 1] = -1;
+        twin[3 * t + 2] = -1;
+    }
+
+    private int dartOf(int t, int v) {
+        return (corner[3 * t] == v ? 3 * t : (corner[3 * t + 1] == v ? 3 * t + 1 : 3 * t + 2));
+    }
+
+    private void link(int dart, int other) {
+        twin[dart] = other;
+        twin[other] = dart;
+    }
+
+    private static int next(int dart) {
+        return (dart % 3 == 2 ? dart - 2 : dart + 1);
+    }
+
+    private static int previous(int dart) {
+        return (dart % 3 == 0 ? dart + 2 : dart - 1);
+    }
+
+    private static int[] ensureCapacity(int[] array, int size) {
+        return (size <= array.length ? array : Arrays.copyOf(array, 2 * array.length));
+    }
+
+    /**
+     * Converts the triangles to a DCEL. The edges of the finite triangles are
+     * numbered in order, the triangles become faces in order, and the ghost
+     * triangles together form the outer face.
+     */
+    private CompactEmbeddedGraph toCompactGraph() {
+        int nDartSlots = 3 * nTriangles;
+        int[] dartId = new int[nDartSlots];
+        int[] faceId = new int[nTriangles];
+        int nEdges = 0;
+        int nFaces = 0;
+        int someGhost = -1;
+
+        for (int t = 0; t < nTriangles; t++) {
+            if (corner[3 * t + 2] == infinite) {
+                faceId[t] = -1;
+                someGhost = t;
+            } else {
+                faceId[t] = nFaces++;
+            }
+        }
+
+        for (int dart = 0; dart < nDartSlots; dart++) {
+            int other = twin[dart];
+
+            if (faceId[dart / 3] >= 0 && (faceId[other / 3] < 0 || dart < other)) {
+                dartId[dart] = 2 * nEdges;
+                dartId[other] = 2 * nEdges + 1;
+                nEdges++;
+            }
+        }
+
+        int outerFace = nFaces;
+        int[] vertexDart = new int[x.length];
+        int[] next = new int[2 * nEdges];
+        int[] previous = new int[2 * nEdges];
+        int[] origin = new int[2 * nEdges];
+        int[] face = new int[2 * nEdges];
+        int[] faceDart = new int[nFaces + 1];
+
+        Arrays.fill(vertexDart, -1);
+
+        for (int t = 0; t < nTriangles; t++) {
+            if (faceId[t] >= 0) {
+                for (int i = 0; i < 3; i++) {
+                    int dart = 3 * t + i;
+                    int id = dartId[dart];
+                    next[id] = dartId[next(dart)];
+                    previous[id] = dartId[previous(dart)];
+                    origin[id] = output(corner[dart]);
+                    face[id] = faceId[t];
+                    vertexDart[origin[id]] = id;
+                }
+
+                faceDart[faceId[t]] = dartId[3 * t];
+            } else {
+                // The finite dart of a ghost goes clockwise along the hull; it is followed by the finite dart of the next ghost
+                int id = dartId[3 * t];
+                int following = dartId[next(twin[3 * t + 1])];
+                next[id] = following;
+                previous[following] = id;
+                origin[id] = output(corner[3 * t]);
+                face[id] = outerFace;
+            }
+        }
+
+        faceDart[outerFace] = dartId[3 * someGhost];
+
+        return new CompactEmbeddedGraph(x, y, vertexDart, next, previous, origin, face, faceDart, outerFace);
+    }
+
+    /**
+     * Returns the vertex of the result that represents inserted vertex v.
+     */
+    private int output(int v) {
+        return (lowestCopy == null ? v : lowestCopy[v]);
+    }
+
+    /**
+     * Connects collinear points in sorted order by a path, which forms a
+     * single outer face.
+     */
+    private CompactEmbeddedGraph collinearPath() {
+        int n = x.length;
+        Integer[] sorted = new Integer[n];
+
+        for (int i = 0; i < n; i++) {
+            sorted[i] = i;
+        }
+
+        Arrays.sort(sorted, Comparator.<Integer>comparingDouble(i -> x[i]).thenComparingDouble(i -> y[i]).thenComparingInt(i -> i));
+
+        // Remove duplicates, keeping the lowest index
+        int[] path = new int[n];
+        int length = 0;
+
+        for (int i = 0; i < n; i++) {
+            int v = sorted[i];
+
+            if (length == 0 || x[path[length - 1]] != x[v] || y[path[length - 1]] != y[v]) {
+                path[length++] = v;
+            }
+        }
+
+        int nEdges = Math.max(0, length - 1);
+        int[] vertexDart = new int[n];
+        int[] next = new int[2 * nEdges];
+        int[] previous = new int[2 * nEdges];
+        int[] origin = new int[2 * nEdges];
+        int[] face = new int[2 * nEdges];
+
+        Arrays.fill(vertexDart, -1);
+
+        // Dart 2i goes forward from path[i], dart 2i + 1 backward to it
+        for (int i = 0; i < nEdges; i++) {
+            origin[2 * i] = path[i];
+            origin[2 * i + 1] = path[i + 1];
+            next[2 * i] = (i + 1 < nEdges ? 2 * (i + 1) : 2 * i + 1);
+            next[2 * i + 1] = (i > 0 ? 2 * (i - 1) + 1 : 0);
+            vertexDart[path[i]] = 2 * i;
+            vertexDart[path[i + 1]] = 2 * i + 1;
+        }
+
+        for (int dart = 0; dart < 2 * nEdges; dart++) {
+            previous[next[dart]] = dart;
+        }
+
+        if (nEdges == 0) {
+            return new CompactEmbeddedGraph(x, y, vertexDart, next, previous, origin, face, new int[0], -1);
+        }
+
+        return new CompactEmbeddedGraph(x, y, vertexDart, next, previous, origin, face, new int[]{0}, 0);
+    }
+}
@@ -2,15 +2,20 @@ package graphs.embedded;
 
 import graphs.Pair;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Set;
+import graphs.graph.AngularOrder;
 import graphs.graph.ClockwiseOrder;
 import graphs.graph.Edge;
 import graphs.graph.Graph;
 import graphs.graph.GraphVertex;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
 
 public class EmbeddedGraph {
 
@@ -21,6 +26,10 @@ public class EmbeddedGraph {
     private Graph originalGraph;
     private HashMap<GraphVertex, EmbeddedVertex> vertexMap;
     private HashMap<Edge, HalfEdge> edgeMap;
+    // Whether vertices and faces cache their degree and size
+    private boolean countsCached = false;
+    // The darts changed by local edits since the last incremental validation, or null if changes are not tracked
+    private Set<HalfEdge> touchedDarts = null;
 
     protected EmbeddedGraph() {
         vertices = new HashSet<EmbeddedVertex>();
@@ -36,7 +45,40 @@ public class EmbeddedGraph {
         initializeFromGraph(graph);
     }
 
+    /**
+     * Creates the embedding of the given graph. If parallel is true, the
+     * rotation systems and faces are computed on multiple threads. The result
+     * is the same either way, except for which dart each face stores.
+     *
+     * @param graph
+     * @param parallel
+     */
+    public EmbeddedGraph(Graph graph, boolean parallel) {
+        this(graph, parallel, false);
+    }
+
+    /**
+     * Creates the embedding of the given graph. If edgesSorted is true, the
+     * edges of each vertex must already be listed in clockwise order, as in
+     * the result of {@link #toGraph()}, and are not sorted again.
+     *
+     * @param graph
+     * @param parallel
+     * @param edgesSorted
+     */
+    public EmbeddedGraph(Graph graph, boolean parallel, boolean edgesSorted) {
+        if (parallel) {
+            initializeFromGraphInParallel(graph, edgesSorted);
+        } else {
+            initializeFromGraph(graph, edgesSorted);
+        }
+    }
+
     protected void initializeFromGraph(Graph graph) {
+        initializeFromGraph(graph, false);
+    }
+
+    protected void initializeFromGraph(Graph graph, boolean edgesSorted) {
         vertices = new HashSet<EmbeddedVertex>();
         faces = new HashSet<Face>();
         darts = new HashSet<HalfEdge>();
@@ -78,8 +120,12 @@ public class EmbeddedGraph {
         // So we can compute the next of all incoming darts and the previous of all outgoing darts this way
         for (GraphVertex vertex : graph.getVertices()) {
             // Sort the edges of this vertex in cyclic (clockwise) order
-            ArrayList<Edge> edges = new ArrayList<Edge>(vertex.getEdges());
-            Collections.sort(edges, new ClockwiseOrder(vertex));
+            List<Edge> edges = vertex.getEdges();
+
+            if (!edgesSorted) {
+                edges = new ArrayList<Edge>(edges);
+                Collections.sort(edges, new ClockwiseOrder(vertex));
+            }
 
             ArrayList<HalfEdge> outgoingDarts = new ArrayList<HalfEdge>(edges.size());
 
@@ -139,6 +185,231 @@ public class EmbeddedGraph {
         }
     }
 
+    /**
+     * Does the same as initializeFromGraph, but sorts the edges around each
+     * vertex and traces the faces in parallel. Darts are linked through the
+     * index of their edge: the darts of edge i are 2i (from vA) and 2i + 1
+     * (from vB).
+     *
+     * @param graph
+     */
+    protected void initializeFromGraphInParallel(Graph graph) {
+        initializeFromGraphInParallel(graph, false);
+    }
+
+    protected void initializeFromGraphInParallel(Graph graph, boolean edgesSorted) {
+        List<GraphVertex> graphVertices = graph.getVertices();
+        List<Edge> graphEdges = graph.getEdges();
+        int nVertices = graphVertices.size();
+        int nDarts = 2 * graphEdges.size();
+
+        originalGraph = graph;
+
+        // Number the vertices. GraphVertex equality depends on coordinates, so we compare by identity.
+        IdentityHashMap<GraphVertex, Integer> vertexIndex = new IdentityHashMap<GraphVertex, Integer>(nVertices);
+
+        for (GraphVertex vertex : graphVertices) {
+            vertexIndex.put(vertex, vertexIndex.size());
+        }
+
+        // Origin of each dart and the outgoing darts of each vertex, as consecutive blocks in one array
+        int[] origin = new int[nDarts];
+        int[] firstDart = new int[nVertices + 1];
+
+        for (int i = 0; i < graphEdges.size(); i++) {
+            Edge edge = graphEdges.get(i);
+            origin[2 * i] = vertexIndex.get(edge.getVA());
+            origin[2 * i + 1] = vertexIndex.get(edge.getVB());
+            firstDart[origin[2 * i] + 1]++;
+            firstDart[origin[2 * i + 1] + 1]++;
+        }
+
+        for (int v = 0; v < nVertices; v++) {
+            firstDart[v + 1] += firstDart[v];
+        }
+
+        int[] outgoing = new int[nDarts];
+
+        if (edgesSorted) {
+            // Take the outgoing darts in the order of the edge lists
+            IdentityHashMap<Edge, Integer> edgeIndex = new IdentityHashMap<Edge, Integer>(graphEdges.size());
+
+            for (int i = 0; i < graphEdges.size(); i++) {
+                edgeIndex.put(graphEdges.get(i), i);
+            }
+
+            for (int v = 0; v < nVertices; v++) {
+                GraphVertex vertex = graphVertices.get(v);
+                int i = firstDart[v];
+
+                for (Edge edge : vertex.getEdges()) {
+                    int e = edgeIndex.get(edge);
+                    outgoing[i++] = (edge.getVA() == vertex ? 2 * e : 2 * e + 1);
+                }
+            }
+        } else {
+            int[] filled = Arrays.copyOf(firstDart, nVertices);
+
+            for (int d = 0; d < nDarts; d++) {
+                outgoing[filled[origin[d]]++] = d;
+            }
+        }
+
+        // make vertices and darts
+        EmbeddedVertex[] embeddedVertices = new EmbeddedVertex[nVertices];
+        HalfEdge[] dartArray = new HalfEdge[nDarts];
+        double[] x = new double[nVertices];
+        double[] y = new double[nVertices];
+
+        IntStream.range(0, nVertices).parallel().forEach(v -> {
+            GraphVertex vertex = graphVertices.get(v);
+            x[v] = vertex.getX();
+            y[v] = vertex.getY();
+            embeddedVertices[v] = new EmbeddedVertex(x[v], y[v]);
+        });
+
+        IntStream.range(0, nDarts).parallel().forEach(d -> {
+            HalfEdge dart = new HalfEdge();
+            dart.setOrigin(embeddedVertices[origin[d]]);
+            dart.setMark(d);
+            dartArray[d] = dart;
+        });
+
+        IntStream.range(0, nDarts / 2).parallel().forEach(i -> {
+            dartArray[2 * i].setTwin(dartArray[2 * i + 1]);
+            dartArray[2 * i + 1].setTwin(dartArray[2 * i]);
+        });
+
+        // Sort the outgoing darts of each vertex in clockwise order and link them.
+        // Each vertex only sets the next of its incoming darts and the previous of its outgoing darts.
+        if (!edgesSorted) {
+            AngularOrder.sortAll(firstDart, outgoing, d -> origin[d ^ 1], x, y, true);
+        }
+
+        IntStream.range(0, nVertices).parallel().forEach(v -> {
+            int from = firstDart[v];
+            int to = firstDart[v + 1];
+
+            for (int i = from; i < to; i++) {
+                HalfEdge dart = dartArray[outgoing[i]];
+                HalfEdge nextDart = dartArray[outgoing[i + 1 < to ? i + 1 : from]];
+
+                dart.getTwin().setNext(nextDart);
+                nextDart.setPrevious(dart.getTwin());
+            }
+
+            if (from < to) {
+                embeddedVertices[v].setDart(dartArray[outgoing[from]]);
+            }
+        });
+
+        // Trace the faces. Each thread walks from the darts in its chunk, claiming darts until
+        // it reaches one that was already claimed. This splits each face into fragments,
+        // identified by their first dart. A fragment that runs into another one is linked to it.
+        AtomicIntegerArray fragment = new AtomicIntegerArray(nDarts); // start of the fragment + 1, or 0 if unclaimed
+        int[] link = new int[nDarts];
+
+        IntStream.range(0, nDarts).parallel().forEach(d -> {
+            if (fragment.get(d) != 0 || !fragment.compareAndSet(d, 0, d + 1)) {
+                return;
+            }
+
+            link[d] = -1;
+            HalfEdge walkDart = dartArray[d].getNext();
+
+            while (walkDart.getMark() != d) {
+                int w = walkDart.getMark();
+
+                if (!fragment.compareAndSet(w, 0, d + 1)) {
+                    // w is the start of another fragment of this face
+                    link[d] = w;
+                    break;
+                }
+
+                walkDart = walkDart.getNext();
+            }
+        });
+
+        // Combine the linked fragments with union-find; the root fragment represents the face
+        int[] faceStart = new int[nDarts];
+
+        for (int d = 0; d < nDarts; d++) {
+            faceStart[d] = d;
+        }
+
+        for (int d = 0; d < nDarts; d++) {
+            if (fragment.get(d) == d + 1 && link[d] >= 0) {
+                int root1 = findRoot(faceStart, d);
+                int root2 = findRoot(faceStart, link[d]);
+                faceStart[root1] = root2;
+            }
+        }
+
+        for (int d = 0; d < nDarts; d++) {
+            if (fragment.get(d) == d + 1) {
+                faceStart[d] = findRoot(faceStart, d);
+            }
+        }
+
+        Face[] faceArray = new Face[nDarts];
+        faces = new HashSet<Face>();
+
+        for (int d = 0; d < nDarts; d++) {
+            if (fragment.get(d) == d + 1 && faceStart[d] == d) {
+                Face face = new Face();
+                face.setDart(dartArray[d]);
+                faceArray[d] = face;
+                faces.add(face);
+            }
+        }
+
+        IntStream.range(0, nDarts).parallel().forEach(d -> dartArray[d].setFace(faceArray[faceStart[fragment.get(d) - 1]]));
+
+        if (!faces.isEmpty()) {
+            // Find the outer face: the face of the first outgoing dart in clockwise order around the leftmost vertex
+            int leftMost = vertexIndex.get(Collections.min(graphVertices, GraphVertex.increasingX));
+            int first = outgoing[firstDart[leftMost]];
+
+            for (int i = firstDart[leftMost] + 1; i < firstDart[leftMost + 1]; i++) {
+                int d = outgoing[i];
+
+                if (AngularOrder.compare(x[leftMost], y[leftMost], x[origin[d ^ 1]], y[origin[d ^ 1]], x[origin[first ^ 1]], y[origin[first ^ 1]]) < 0) {
+                    first = d;
+                }
+            }
+
+            dartArray[first].getFace().setOuterFace(true);
+        }
+
+        // Fill the collections
+        vertices = new HashSet<EmbeddedVertex>(2 * nVertices);
+        darts = new HashSet<HalfEdge>(2 * nDarts);
+        vertexMap = new HashMap<GraphVertex, EmbeddedVertex>(2 * nVertices);
+        edgeMap = new HashMap<Edge, HalfEdge>(nDarts);
+
+        for (int v = 0; v < nVertices; v++) {
+            vertices.add(embeddedVertices[v]);
+            vertexMap.put(graphVertices.get(v), embeddedVertices[v]);
+        }
+
+        for (int d = 0; d < nDarts; d++) {
+            darts.add(dartArray[d]);
+        }
+
+        for (int i = 0; i < graphEdges.size(); i++) {
+            edgeMap.put(graphEdges.get(i), dartArray[2 * i]);
+        }
+    }
+
+    private static int findRoot(int[] parent, int element) {
+        while (parent[element] != element) {
+            parent[element] = parent[parent[element]];
+            element = parent[element];
+        }
+
+        return element;
+    }
+
     public Set<EmbeddedVertex> getVertices() {
         return vertices;
     }
@@ -187,10 +458,87 @@ public class EmbeddedGraph {
         return vertexMap;
     }
 
+    /**
+     * Enables or disables caching of vertex degrees and face sizes. While
+     * caching is enabled, getDegree and getSize take constant time and the
+     * local edits below keep the cached values up to date. Any other change to
+     * the DCEL invalidates them; call this method again to recompute them.
+     *
+     * @param enabled
+     */
+    public void setCountCaching(boolean enabled) {
+        countsCached = enabled;
+
+        for (EmbeddedVertex v : vertices) {
+            v.setCachedDegree(-1);
+
+            if (enabled) {
+                v.setCachedDegree(v.getDegree());
+            }
+        }
+
+        for (Face f : faces) {
+            f.setCachedSize(-1);
+
+            if (enabled) {
+                f.setCachedSize(f.getSize());
+            }
+        }
+    }
+
+    public boolean isCountCaching() {
+        return countsCached;
+    }
+
+    /**
+     * Enables or disables tracking of the darts changed by local edits, which
+     * allows {@link DCELValidator#validateChanges()} to check only those.
+     *
+     * @param enabled
+     */
+    public void setChangeTracking(boolean enabled) {
+        touchedDarts = (enabled ? new HashSet<HalfEdge>() : null);
+    }
+
+    public boolean isChangeTracking() {
+        return touchedDarts != null;
+    }
+
+    /**
+     * Returns the darts changed since the last call, and starts a new set.
+     * Returns null if changes are not tracked.
+     */
+    Set<HalfEdge> takeTouchedDarts() {
+        Set<HalfEdge> touched = touchedDarts;
+
+        if (touched != null) {
+            touchedDarts = new HashSet<HalfEdge>();
+        }
+
+        return touched;
+    }
+
+    private void touch(HalfEdge dart) {
+        if (touchedDarts != null) {
+            touchedDarts.add(dart);
+        }
+    }
+
+    /**
+     * Returns a graph with the same vertices and edges as this embedding. Each
+     * edge is created once, when the first of its darts is found, and the
+     * edges of each vertex are listed in clockwise order, starting with the
+     * edge of the dart stored with the corresponding embedded vertex. The
+     * result can therefore be embedded again without sorting, using
+     * {@link #EmbeddedGraph(Graph, boolean, boolean)}. Runs in linear time.
+     * The marks of the darts are overwritten.
+     *
+     * @return
+     */
     public Graph toGraph() {
-        Graph result = new Graph();
+        Graph result = new Graph(vertices.size(), darts.size() / 2);
 
-        HashMap<EmbeddedVertex, GraphVertex> vMap = new HashMap<EmbeddedVertex, GraphVertex>(vertices.size() * 2); // Double the required size to keep hash access fast
+        IdentityHashMap<EmbeddedVertex, GraphVertex> vMap = new IdentityHashMap<EmbeddedVertex, GraphVertex>(vertices.size());
 
         for (EmbeddedVertex v : vertices) {
             GraphVertex vertex = new GraphVertex(v.getX(), v.getY());
@@ -200,67 +548,455 @@ public class EmbeddedGraph {
         }
 
         for (HalfEdge dart : darts) {
-            GraphVertex vA = vMap.get(dart.getOrigin());
-            GraphVertex vB = vMap.get(dart.getDestination());
+            dart.setMark(-1);
+        }
 
-            if (!result.containsEdge(vA, vB)) {
-                result.addEdge(vA, vB);
+        // The mark of both darts of an edge is its index in the edge list
+        List<Edge> edges = result.getEdges();
+
+        for (EmbeddedVertex v : vertices) {
+            HalfEdge first = v.getDart();
+
+            if (first == null) {
+                continue;
             }
+
+            GraphVertex vertex = vMap.get(v);
+            HalfEdge dart = first;
+
+            do {
+                if (dart.getMark() < 0) {
+                    dart.setMark(edges.size());
+                    dart.getTwin().setMark(edges.size());
+                    edges.add(new Edge(vertex, vMap.get(dart.getDestination())));
+                }
+
+                vertex.addEdge(edges.get(dart.getMark()));
+                dart = dart.getTwin().getNext();
+            } while (dart != first);
         }
 
         return result;
     }
 
-    public Pair<Graph, HashMap<Face, GraphVertex>> getDualGraph() {
-        Graph dual = new Graph();
+    // Local edits. These keep the vertices, darts, faces and the outer face
+    // consistent without rebuilding the DCEL. They do not update the edge and
+    // vertex maps, which refer to the original graph.
+    /**
+     * Inserts an edge from the origin of a to the origin of b, which must be
+     * different darts of the same face. The face is split in two: the new
+     * dart from a's origin is followed by b, and its twin is followed by a.
+     * Runs in time linear in the size of the face.
+     *
+     * @param a
+     * @param b
+     * @return the new dart from the origin of a to the origin of b
+     */
+    public HalfEdge insertEdge(HalfEdge a, HalfEdge b) {
+        Face face = a.getFace();
+
+        if (a == b || b.getFace() != face) {
+            throw new IllegalArgumentException("The darts must be different darts of the same face.");
+        }
 
-        // Add a vertex for each face and remember the mapping
-        HashMap<Face, GraphVertex> faceMap = new HashMap<Face, GraphVertex>(2 * faces.size()); // Double the capacity to make the hashing more efficient
+        if (a.getOrigin() == b.getOrigin()) {
+            throw new IllegalArgumentException("The darts must have different origins.");
+        }
 
-        for (Face face : faces) {
-            GraphVertex v = centerOfMass(face);
-            faceMap.put(face, v);
-            dual.addVertex(v);
+        HalfEdge dart = new HalfEdge();
+        HalfEdge twin = new HalfEdge();
+        dart.setTwin(twin);
+        twin.setTwin(dart);
+        dart.setOrigin(a.getOrigin());
+        twin.setOrigin(b.getOrigin());
+
+        HalfEdge beforeA = a.getPrevious();
+        HalfEdge beforeB = b.getPrevious();
+
+        link(beforeA, dart);
+        link(dart, b);
+        link(beforeB, twin);
+        link(twin, a);
+
+        // The face keeps the side of the new dart, the side of its twin gets a new face
+        Face newFace = new Face();
+        face.setDart(dart);
+        newFace.setDart(twin);
+        dart.setFace(face);
+
+        HalfEdge walkDart = twin;
+        int newSize = 0;
+
+        do {
+            walkDart.setFace(newFace);
+            touch(walkDart);
+            walkDart = walkDart.getNext();
+            newSize++;
+        } while (walkDart != twin);
+
+        if (countsCached) {
+            face.setCachedSize(face.getSize() + 2 - newSize);
+            newFace.setCachedSize(newSize);
         }
 
-        // Add an edge for each adjacency between faces
-        for (HalfEdge e : darts) {
-            GraphVertex v1 = faceMap.get(e.getFace());
-            GraphVertex v2 = faceMap.get(e.getTwin().getFace());
+        dart.getOrigin().adjustCachedDegree(1);
+        twin.getOrigin().adjustCachedDegree(1);
 
-            dual.addEdge(v1, v2);
+        if (face.isOuterFace() && signedArea(twin) < signedArea(dart)) {
+            // Bounded faces are counter-clockwise, so the outer boundary has the smallest signed area
+            face.setOuterFace(false);
+            newFace.setOuterFace(true);
         }
 
-        return new Pair<Graph, HashMap<Face, GraphVertex>>(dual, faceMap);
+        darts.add(dart);
+        darts.add(twin);
+        faces.add(newFace);
+
+        return dart;
     }
 
-    private GraphVertex centerOfMass(Face face) {
-        List<EmbeddedVertex> faceVertices = face.getVertices();
+    /**
+     * Removes the edge of the given dart. If the edge separates two faces,
+     * these are merged. An edge with an endpoint of degree one can also be
+     * removed, together with that endpoint. Removing any other
+     * edge with the same face on both sides would disconnect the graph, and
+     * is not allowed. Runs in time linear in the size of the removed face.
+     *
+     * @param dart
+     * @return the face that remains
+     */
+    public Face removeEdge(HalfEdge dart) {
+        HalfEdge twin = dart.getTwin();
+        Face face = dart.getFace();
+        Face otherFace = twin.getFace();
+
+        HalfEdge beforeDart = dart.getPrevious();
+        HalfEdge afterDart = dart.getNext();
+        HalfEdge beforeTwin = twin.getPrevious();
+        HalfEdge afterTwin = twin.getNext();
+
+        boolean originLeaf = (afterTwin == dart); // The origin of dart has degree one
+        boolean destinationLeaf = (afterDart == twin);
+
+        if (face == otherFace && !originLeaf && !destinationLeaf) {
+            throw new IllegalArgumentException("Removing this edge would disconnect the graph.");
+        }
+
+        if (originLeaf && destinationLeaf) {
+            throw new IllegalArgumentException("Removing this edge would leave a face without boundary.");
+        }
 
-        if (faceVertices != null && faceVertices.size() > 0) {
-            double area = 0;
-            double cx = 0;
-            double cy = 0;
+        if (countsCached) {
+            face.setCachedSize(face == otherFace ? face.getSize() - 2 : face.getSize() + otherFace.getSize() - 2);
+        }
 
-            for (int i = 0; i < faceVertices.size(); i++) {
-                EmbeddedVertex v = faceVertices.get(i);
-                EmbeddedVertex next = faceVertices.get((i + 1) % faceVertices.size());
+        // Relink the boundary
+        if (originLeaf) {
+            link(beforeTwin, afterDart);
+        } else if (destinationLeaf) {
+            link(beforeDart, afterTwin);
+        } else {
+            link(beforeDart, afterTwin);
+            link(beforeTwin, afterDart);
+        }
+
+        // Update the vertices
+        EmbeddedVertex origin = dart.getOrigin();
+        EmbeddedVertex destination = twin.getOrigin();
 
-                double areaIncrement = v.getX() * next.getY() - next.getX() * v.getY();
+        origin.adjustCachedDegree(-1);
+        destination.adjustCachedDegree(-1);
 
-                area += areaIncrement;
-                cx += (v.getX() + next.getX()) * areaIncrement;
-                cy += (v.getY() + next.getY()) * areaIncrement;
+        if (originLeaf) {
+            origin.setDart(null);
+            vertices.remove(origin);
+        } else if (origin.getDart() == dart) {
+            origin.setDart(afterTwin);
+        }
+
+        if (destinationLeaf) {
+            destination.setDart(null);
+            vertices.remove(destination);
+        } else if (destination.getDart() == twin) {
+            destination.setDart(afterDart);
+        }
+
+        // Merge the faces
+        HalfEdge remaining = (originLeaf ? afterDart : afterTwin);
+
+        if (face != otherFace) {
+            HalfEdge walkDart = remaining;
+
+            do {
+                walkDart.setFace(face);
+                touch(walkDart);
+                walkDart = walkDart.getNext();
+            } while (walkDart != remaining);
+
+            face.setOuterFace(face.isOuterFace() || otherFace.isOuterFace());
+            faces.remove(otherFace);
+        }
+
+        face.setDart(remaining);
+
+        darts.remove(dart);
+        darts.remove(twin);
+
+        return face;
+    }
+
+    /**
+     * Flips the edge of the given dart, which must separate two different
+     * faces. The edge is replaced by the edge between the destinations of the
+     * next darts of the dart and its twin. For two triangles, this is the
+     * usual flip in their quadrilateral. The darts of the edge are reused: the
+     * given dart ends at the destination of its old next. Runs in time linear
+     * in the degree of the new endpoints.
+     *
+     * @param dart
+     */
+    public void flipEdge(HalfEdge dart) {
+        HalfEdge twin = dart.getTwin();
+        Face face = dart.getFace();
+        Face otherFace = twin.getFace();
+
+        HalfEdge beforeDart = dart.getPrevious();
+        HalfEdge afterDart = dart.getNext();
+        HalfEdge beforeTwin = twin.getPrevious();
+        HalfEdge afterTwin = twin.getNext();
+
+        if (face == otherFace || afterDart == twin || afterTwin == dart) {
+            throw new IllegalArgumentException("Only edges between two different faces can be flipped.");
+        }
+
+        EmbeddedVertex newOrigin = afterTwin.getDestination();
+        EmbeddedVertex newDestination = afterDart.getDestination();
+
+        if (newOrigin == newDestination || newOrigin.isAdjacentTo(newDestination)) {
+            throw new IllegalArgumentException("Flipping this edge would create a loop or duplicate edge.");
+        }
+
+        // Release the old endpoints
+        dart.getOrigin().adjustCachedDegree(-1);
+        twin.getOrigin().adjustCachedDegree(-1);
+        newOrigin.adjustCachedDegree(1);
+        newDestination.adjustCachedDegree(1);
+
+        if (dart.getOrigin().getDart() == dart) {
+            dart.getOrigin().setDart(afterTwin);
+        }
+
+        if (twin.getOrigin().getDart() == twin) {
+            twin.getOrigin().setDart(afterDart);
+        }
+
+        HalfEdge dartSuccessor = afterDart.getNext();
+        HalfEdge twinSuccessor = afterTwin.getNext();
+
+        // afterTwin moves to the face of dart, afterDart to the face of twin
+        link(beforeDart, afterTwin);
+        link(afterTwin, dart);
+        link(dart, dartSuccessor);
+        link(beforeTwin, afterDart);
+        link(afterDart, twin);
+        link(twin, twinSuccessor);
+
+        afterTwin.setFace(face);
+        afterDart.setFace(otherFace);
+        face.setDart(dart);
+        otherFace.setDart(twin);
+
+        dart.setOrigin(newOrigin);
+        twin.setOrigin(newDestination);
+    }
+
+    /**
+     * Splits the edge of the given dart with a new vertex at (x, y). The
+     * given dart and its twin keep their origins and end at the new vertex.
+     * Runs in constant time.
+     *
+     * @param dart
+     * @param x
+     * @param y
+     * @return the new vertex
+     */
+    public EmbeddedVertex splitEdge(HalfEdge dart, double x, double y) {
+        HalfEdge twin = dart.getTwin();
+        HalfEdge afterDart = dart.getNext();
+        HalfEdge afterTwin = twin.getNext();
+
+        EmbeddedVertex vertex = new EmbeddedVertex(x, y);
+
+        // The new darts leave the new vertex towards the old endpoints
+        HalfEdge toDestination = new HalfEdge();
+        HalfEdge toOrigin = new HalfEdge();
+        toDestination.setOrigin(vertex);
+        toOrigin.setOrigin(vertex);
+        toDestination.setFace(dart.getFace());
+        toOrigin.setFace(twin.getFace());
+
+        dart.setTwin(toOrigin);
+        toOrigin.setTwin(dart);
+        twin.setTwin(toDestination);
+        toDestination.setTwin(twin);
+
+        link(dart, toDestination);
+        link(toDestination, afterDart);
+        link(twin, toOrigin);
+        link(toOrigin, afterTwin);
+
+        vertex.setDart(toDestination);
+
+        if (countsCached) {
+            vertex.setCachedDegree(2);
+        }
+
+        dart.getFace().adjustCachedSize(1);
+        twin.getFace().adjustCachedSize(1);
+
+        vertices.add(vertex);
+        darts.add(toDestination);
+        darts.add(toOrigin);
+
+        return vertex;
+    }
+
+    /**
+     * Inserts a new vertex at (x, y) in the given bounded face and connects
+     * it to every vertex on the boundary of the face, so that the face is
+     * split into triangles. The boundary should visit each vertex only once.
+     * Runs in time linear in the size of the face.
+     *
+     * @param face
+     * @param x
+     * @param y
+     * @return the new vertex
+     */
+    public EmbeddedVertex insertVertex(Face face, double x, double y) {
+        if (face.isOuterFace() || face.getDart() == null) {
+            throw new IllegalArgumentException("Vertices can only be inserted in bounded faces.");
+        }
+
+        List<HalfEdge> boundary = face.getEdges();
+        int size = boundary.size();
+
+        EmbeddedVertex vertex = new EmbeddedVertex(x, y);
+
+        // Spoke i consists of out[i] from the new vertex to the origin of boundary dart i, and its twin in[i]
+        HalfEdge[] out = new HalfEdge[size];
+        HalfEdge[] in = new HalfEdge[size];
+
+        for (int i = 0; i < size; i++) {
+            out[i] = new HalfEdge();
+            in[i] = new HalfEdge();
+            out[i].setTwin(in[i]);
+            in[i].setTwin(out[i]);
+            out[i].setOrigin(vertex);
+            in[i].setOrigin(boundary.get(i).getOrigin());
+        }
+
+        // Triangle i consists of boundary dart i, in[i + 1] and out[i]
+        for (int i = 0; i < size; i++) {
+            HalfEdge e = boundary.get(i);
+            HalfEdge spokeIn = in[(i + 1) % size];
+            Face triangle = (i == 0 ? face : new Face());
+
+            link(e, spokeIn);
+            link(spokeIn, out[i]);
+            link(out[i], e);
+
+            e.setFace(triangle);
+            spokeIn.setFace(triangle);
+            out[i].setFace(triangle);
+            triangle.setDart(e);
+            e.getOrigin().adjustCachedDegree(1);
+
+            if (countsCached) {
+                triangle.setCachedSize(3);
             }
 
-            area /= 2;
-            cx /= 6 * area;
-            cy /= 6 * area;
+            if (i > 0) {
+                faces.add(triangle);
+            }
 
-            return new GraphVertex(cx, cy);
-        } else {
-            return new GraphVertex(0, 0);
+            darts.add(out[i]);
+            darts.add(in[i]);
+        }
+
+        vertex.setDart(out[0]);
+        vertices.add(vertex);
+
+        if (countsCached) {
+            vertex.setCachedDegree(size);
+        }
+
+        return vertex;
+    }
+
+    private void link(HalfEdge dart, HalfEdge next) {
+        dart.setNext(next);
+        next.setPrevious(dart);
+        touch(dart);
+        touch(next);
+    }
+
+    /**
+     * Returns the signed area of the face cycle through the given dart, which
+     * is positive for counter-clockwise cycles.
+     */
+    private static double signedArea(HalfEdge dart) {
+        double area = 0;
+        HalfEdge walkDart = dart;
+
+        do {
+            EmbeddedVertex v = walkDart.getOrigin();
+            EmbeddedVertex next = walkDart.getNext().getOrigin();
+            area += v.getX() * next.getY() - next.getX() * v.getY();
+            walkDart = walkDart.getNext();
+        } while (walkDart != dart);
+
+        return area / 2;
+    }
+
+    /**
+     * Returns the dual graph, with a vertex for each face, placed at its
+     * centroid as computed by {@link FaceMetrics}, and an edge for each pair
+     * of twin darts, together with the map from faces to dual vertices. The
+     * marks of the darts are overwritten.
+     *
+     * @return
+     */
+    public Pair<Graph, HashMap<Face, GraphVertex>> getDualGraph() {
+        Graph dual = new Graph();
+
+        // Add a vertex for each face and remember the mapping
+        HashMap<Face, GraphVertex> faceMap = new HashMap<Face, GraphVertex>(2 * faces.size()); // Double the capacity to make the hashing more efficient
+
+        FaceMetrics metrics = new FaceMetrics(this);
+
+        for (int f = 0; f < metrics.getFaceCount(); f++) {
+            GraphVertex v = new GraphVertex(metrics.getCentroidX()[f], metrics.getCentroidY()[f]);
+            faceMap.put(metrics.getFace(f), v);
+            dual.addVertex(v);
+        }
+
+        // Add an edge for each adjacency between faces, once per pair of twins
+        for (HalfEdge e : darts) {
+            e.setMark(0);
+        }
+
+        for (HalfEdge e : darts) {
+            if (e.getMark() == 0) {
+                e.getTwin().setMark(1);
+
+                GraphVertex v1 = faceMap.get(e.getFace());
+                GraphVertex v2 = faceMap.get(e.getTwin().getFace());
+
+                dual.addEdge(v1, v2);
+            }
         }
+
+        return new Pair<Graph, HashMap<Face, GraphVertex>>(dual, faceMap);
     }
 
     public boolean verifyDCEL() {
@@ -304,7 +1040,7 @@ public class EmbeddedGraph {
                 return false;
             }
 
-            if (!e.getOrigin().getEdges().contains(e)) {
+            if (!isAroundOrigin(e)) {
                 System.out.println("----> origins edges do not contain edge");
                 return false;
             }
@@ -357,4 +1093,27 @@ public class EmbeddedGraph {
         //System.out.println("Verification succesful");
         return true;
     }
+
+    /**
+     * Returns true if the given dart is found when walking around its origin.
+     */
+    private static boolean isAroundOrigin(HalfEdge dart) {
+        HalfEdge start = dart.getOrigin().getDart();
+
+        if (start == null) {
+            return false;
+        }
+
+        HalfEdge walkDart = start;
+
+        do {
+            if (walkDart == dart) {
+                return true;
+            }
+
+            walkDart = walkDart.getTwin().getNext();
+        } while (walkDart != start);
+
+        return false;
+    }
 }
@@ -0,0 +1,138 @@
+package graphs.embedded;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads embedded graphs in the binary format written by
+ * {@link EmbeddedGraphWriter}. The file stores the DCEL itself, so loading it
+ * does not sort edges or trace faces, and the embedding is restored exactly,
+ * even when it does not follow from the vertex positions.
+ * <p>
+ * All numbers are little-endian. The file starts with a header of six ints:
+ * the magic number 0x4C454344 ("DCEL"), the format version, and the numbers
+ * of vertices, darts and faces and the index of the outer face (-1 if there
+ * is none). It is followed by the columns of {@link CompactEmbeddedGraph}:
+ * the doubles x and y, and the ints vertexDart, next, previous, origin, face
+ * and faceDart. The twins of darts are not stored, as the darts of an edge
+ * are numbered 2i and 2i + 1. The columns are read through memory-mapped
+ * buffers.
+ */
+public class EmbeddedGraphReader {
+
+    static final int MAGIC = 0x4C454344;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 6 * 4;
+    // The largest number of elements that is mapped at once, well below the 2GB limit of a buffer
+    static final int CHUNK_SIZE = 1 << 26;
+
+    public static EmbeddedGraph readGraph(Path file) throws IOException {
+        return readCompactGraph(file).toEmbeddedGraph();
+    }
+
+    public static CompactEmbeddedGraph readCompactGraph(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Incorrect file format: File is too short to contain a header.");
+            }
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Incorrect file format: Not a binary embedded graph.");
+            }
+
+            int version = header.getInt();
+
+            if (version != VERSION) {
+                throw new IOException("Incorrect file format: Unsupported version " + version + ".");
+            }
+
+            int nVertices = header.getInt();
+            int nDarts = header.getInt();
+            int nFaces = header.getInt();
+            int outerFace = header.getInt();
+
+            if (nVertices < 0 || nDarts < 0 || nDarts % 2 != 0 || nFaces < 0 || outerFace < -1 || outerFace >= nFaces) {
+                throw new IOException("Incorrect file format: Invalid header.");
+            }
+
+            long expectedSize = HEADER_SIZE + 16L * nVertices + 4L * nVertices + 16L * nDarts + 4L * nFaces;
+
+            if (channel.size() != expectedSize) {
+                throw new IOException("Incorrect file format: Expected " + expectedSize + " bytes, but the file has " + channel.size() + ".");
+            }
+
+            double[] x = new double[nVertices];
+            double[] y = new double[nVertices];
+            int[] vertexDart = new int[nVertices];
+            int[] next = new int[nDarts];
+            int[] previous = new int[nDarts];
+            int[] origin = new int[nDarts];
+            int[] face = new int[nDarts];
+            int[] faceDart = new int[nFaces];
+
+            long position = HEADER_SIZE;
+            position = readDoubles(channel, position, x);
+            position = readDoubles(channel, position, y);
+            position = readInts(channel, position, vertexDart);
+            position = readInts(channel, position, next);
+            position = readInts(channel, position, previous);
+            position = readInts(channel, position, origin);
+            position = readInts(channel, position, face);
+            readInts(channel, position, faceDart);
+
+            checkRange(vertexDart, nDarts, "Vertex dart");
+            checkRange(next, nDarts, "Next dart");
+            checkRange(previous, nDarts, "Previous dart");
+            checkRange(origin, nVertices, "Origin");
+            checkRange(face, nFaces, "Face");
+            checkRange(faceDart, nDarts, "Face dart");
+
+            return new CompactEmbeddedGraph(x, y, vertexDart, next, previous, origin, face, faceDart, outerFace);
+        }
+    }
+
+    /**
+     * Reads the given array from the file, starting at the given position,
+     * and returns the position after it.
+     */
+    private static long readDoubles(FileChannel channel, long position, double[] values) throws IOException {
+        for (int from = 0; from < values.length; from += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, values.length - from);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, 8L * length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(values, from, length);
+            position += 8L * length;
+        }
+
+        return position;
+    }
+
+    private static long readInts(FileChannel channel, long position, int[] values) throws IOException {
+        for (int from = 0; from < values.length; from += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, values.length - from);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values, from, length);
+            position += 4L * length;
+        }
+
+        return position;
+    }
+
+    /**
+     * Checks that all references are -1 or valid indices, so that a damaged
+     * file is reported here instead of failing later.
+     */
+    private static void checkRange(int[] references, int size, String name) throws IOException {
+        for (int i = 0; i < references.length; i++) {
+            if (references[i] < -1 || references[i] >= size) {
+                throw new IOException("Incorrect file format: " + name + " " + references[i] + " out of range at index " + i + ".");
+            }
+        }
+    }
+}
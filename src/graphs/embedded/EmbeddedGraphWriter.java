@@ -0,0 +1,91 @@
+package graphs.embedded;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Writes embedded graphs in a binary format that stores the DCEL directly.
+ * See {@link EmbeddedGraphReader} for a description of the format.
+ */
+public class EmbeddedGraphWriter {
+
+    /**
+     * Writes the given graph. The marks of its darts are overwritten.
+     *
+     * @param file
+     * @param graph
+     * @throws IOException
+     */
+    public static void writeGraph(Path file, EmbeddedGraph graph) throws IOException {
+        writeGraph(file, CompactEmbeddedGraph.fromEmbeddedGraph(graph));
+    }
+
+    public static void writeGraph(Path file, CompactEmbeddedGraph graph) throws IOException {
+        int nVertices = graph.getVertexCount();
+        int nDarts = graph.getDartCount();
+        int nFaces = graph.getFaceCount();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, EmbeddedGraphReader.HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(EmbeddedGraphReader.MAGIC);
+            header.putInt(EmbeddedGraphReader.VERSION);
+            header.putInt(nVertices);
+            header.putInt(nDarts);
+            header.putInt(nFaces);
+            header.putInt(graph.getOuterFace());
+
+            long position = EmbeddedGraphReader.HEADER_SIZE;
+            position = writeDoubles(channel, position, nVertices, graph::getX);
+            position = writeDoubles(channel, position, nVertices, graph::getY);
+            position = writeInts(channel, position, nVertices, graph::getDart);
+            position = writeInts(channel, position, nDarts, graph::next);
+            position = writeInts(channel, position, nDarts, graph::previous);
+            position = writeInts(channel, position, nDarts, graph::origin);
+            position = writeInts(channel, position, nDarts, graph::face);
+            writeInts(channel, position, nFaces, graph::getFaceDart);
+        }
+    }
+
+    /**
+     * Writes the values for indices 0 to n - 1, starting at the given
+     * position, and returns the position after them.
+     */
+    private static long writeDoubles(FileChannel channel, long position, int n, IntToDoubleFunction value) throws IOException {
+        for (int from = 0; from < n; from += EmbeddedGraphReader.CHUNK_SIZE) {
+            int to = Math.min(n, from + EmbeddedGraphReader.CHUNK_SIZE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, 8L * (to - from));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            for (int i = from; i < to; i++) {
+                buffer.putDouble(value.applyAsDouble(i));
+            }
+
+            position += 8L * (to - from);
+        }
+
+        return position;
+    }
+
+    private static long writeInts(FileChannel channel, long position, int n, IntUnaryOperator value) throws IOException {
+        for (int from = 0; from < n; from += EmbeddedGraphReader.CHUNK_SIZE) {
+            int to = Math.min(n, from + EmbeddedGraphReader.CHUNK_SIZE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, 4L * (to - from));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            for (int i = from; i < to; i++) {
+                buffer.putInt(value.applyAsInt(i));
+            }
+
+            position += 4L * (to - from);
+        }
+
+        return position;
+    }
+}
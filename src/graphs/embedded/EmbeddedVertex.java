@@ -4,6 +4,7 @@ import graphs.graph.Vertex;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  *
@@ -12,6 +13,7 @@ import java.util.List;
 public class EmbeddedVertex extends Vertex {
 
     private HalfEdge dart;
+    private int degree = -1; // -1 if not cached
 
     public EmbeddedVertex(final double x, final double y) {
         super(x, y);
@@ -31,6 +33,10 @@ public class EmbeddedVertex extends Vertex {
      * @return
      */
     public int getDegree() {
+        if (degree >= 0) {
+            return degree;
+        }
+
         if (dart == null) {
             return 0;
         }
@@ -46,6 +52,80 @@ public class EmbeddedVertex extends Vertex {
         return degree;
     }
 
+    /**
+     * Caches the given degree, which is then returned by getDegree without
+     * walking around the vertex. Use -1 to clear the cache.
+     *
+     * @param degree
+     */
+    void setCachedDegree(int degree) {
+        this.degree = degree;
+    }
+
+    /**
+     * Changes the cached degree, if any, by the given amount.
+     */
+    void adjustCachedDegree(int change) {
+        if (degree >= 0) {
+            degree += change;
+        }
+    }
+
+    /**
+     * Calls the action for each outgoing dart of this vertex, in clockwise
+     * order, without allocating a list.
+     *
+     * @param action
+     */
+    public void forEachDart(Consumer<? super HalfEdge> action) {
+        if (dart == null) {
+            return;
+        }
+
+        HalfEdge walkDart = dart;
+
+        do {
+            action.accept(walkDart);
+            walkDart = walkDart.getTwin().getNext();
+        } while (walkDart != dart);
+    }
+
+    /**
+     * Calls the action for each face around this vertex, in clockwise order.
+     *
+     * @param action
+     */
+    public void forEachFace(Consumer<? super Face> action) {
+        if (dart == null) {
+            return;
+        }
+
+        HalfEdge walkDart = dart;
+
+        do {
+            action.accept(walkDart.getFace());
+            walkDart = walkDart.getTwin().getNext();
+        } while (walkDart != dart);
+    }
+
+    /**
+     * Calls the action for each neighbour of this vertex, in clockwise order.
+     *
+     * @param action
+     */
+    public void forEachNeighbour(Consumer<? super EmbeddedVertex> action) {
+        if (dart == null) {
+            return;
+        }
+
+        HalfEdge walkDart = dart;
+
+        do {
+            action.accept(walkDart.getDestination());
+            walkDart = walkDart.getTwin().getNext();
+        } while (walkDart != dart);
+    }
+
     /**
      * Returns the outgoing darts of this vertex in clockwise order, starting
      * with the dart that is stored with this vertex.
@@ -3,6 +3,7 @@ package graphs.embedded;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  *
@@ -12,6 +13,7 @@ public class Face {
 
     private HalfEdge dart;
     private boolean outerFace;
+    private int size = -1; // -1 if not cached
 
     public HalfEdge getDart() {
         return dart;
@@ -39,6 +41,10 @@ public class Face {
      * @return
      */
     public int getSize() {
+        if (size >= 0) {
+            return size;
+        }
+
         if (dart == null) {
             return 0;
         }
@@ -54,6 +60,63 @@ public class Face {
         return count;
     }
 
+    /**
+     * Caches the given size, which is then returned by getSize without walking
+     * around the face. Use -1 to clear the cache.
+     *
+     * @param size
+     */
+    void setCachedSize(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Changes the cached size, if any, by the given amount.
+     */
+    void adjustCachedSize(int change) {
+        if (size >= 0) {
+            size += change;
+        }
+    }
+
+    /**
+     * Calls the action for each dart of this face, in counter-clockwise order,
+     * without allocating a list.
+     *
+     * @param action
+     */
+    public void forEachDart(Consumer<? super HalfEdge> action) {
+        if (dart == null) {
+            return;
+        }
+
+        HalfEdge walkDart = dart;
+
+        do {
+            action.accept(walkDart);
+            walkDart = walkDart.getNext();
+        } while (walkDart != dart);
+    }
+
+    /**
+     * Calls the action for each vertex of this face, in counter-clockwise
+     * order.
+     *
+     * @param action
+     */
+    public void forEachVertex(Consumer<? super EmbeddedVertex> action) {
+        if (dart == null) {
+            return;
+        }
+
+        HalfEdge walkDart = dart;
+
+        do {
+            action.accept(walkDart.getOrigin());
+            walkDart = walkDart.getNext();
+        } while (walkDart != dart);
+    }
+
     /**
      * Returns a list of the vertices of this face, in counter-clockwise order,
      * starting from the origin of the dart associated with this face.
@@ -0,0 +1,181 @@
+package graphs.embedded;
+
+import graphs.Predicates;
+import java.util.IdentityHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Per-face metrics of an embedded graph, stored in columns indexed by face:
+ * signed area, perimeter, centroid, size (number of darts) and convexity. All
+ * metrics of a face are computed in a single walk around it, and the faces
+ * are processed in parallel.
+ * <p>
+ * Inner faces have positive area and the outer face has negative area. The
+ * centroid is the centroid of the area of the face, or the average of its
+ * vertices if the area is zero. A face is convex if its boundary never turns
+ * against its orientation; the turns are tested exactly.
+ * <p>
+ * The metrics are not updated automatically. Call {@link #update()} after
+ * editing the graph; the columns are reused if the number of faces did not
+ * change.
+ */
+public class FaceMetrics {
+
+    private final EmbeddedGraph graph;
+    private Face[] faces;
+    private IdentityHashMap<Face, Integer> faceIndex = null;
+    private double[] area;
+    private double[] perimeter;
+    private double[] centroidX;
+    private double[] centroidY;
+    private int[] size;
+    private boolean[] convex;
+
+    public FaceMetrics(EmbeddedGraph graph) {
+        this.graph = graph;
+        update();
+    }
+
+    /**
+     * Recomputes all metrics for the current faces of the graph. Faces may be
+     * numbered differently than before.
+     */
+    public final void update() {
+        faces = graph.getFaces().toArray(new Face[0]);
+        faceIndex = null;
+        int n = faces.length;
+
+        if (area == null || area.length != n) {
+            area = new double[n];
+            perimeter = new double[n];
+            centroidX = new double[n];
+            centroidY = new double[n];
+            size = new int[n];
+            convex = new boolean[n];
+        }
+
+        IntStream.range(0, n).parallel().forEach(this::compute);
+    }
+
+    private void compute(int f) {
+        HalfEdge dart = faces[f].getDart();
+
+        if (dart == null) {
+            area[f] = 0;
+            perimeter[f] = 0;
+            centroidX[f] = 0;
+            centroidY[f] = 0;
+            size[f] = 0;
+            convex[f] = true;
+            return;
+        }
+
+        double doubleArea = 0;
+        double length = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double vertexSumX = 0;
+        double vertexSumY = 0;
+        int count = 0;
+        boolean leftTurn = false;
+        boolean rightTurn = false;
+
+        EmbeddedVertex previous = dart.getPrevious().getOrigin();
+        HalfEdge walkDart = dart;
+
+        do {
+            EmbeddedVertex v = walkDart.getOrigin();
+            EmbeddedVertex next = walkDart.getNext().getOrigin();
+            double x = v.getX();
+            double y = v.getY();
+            double nextX = next.getX();
+            double nextY = next.getY();
+
+            double areaIncrement = x * nextY - nextX * y;
+
+            doubleArea += areaIncrement;
+            sumX += (x + nextX) * areaIncrement;
+            sumY += (y + nextY) * areaIncrement;
+            length += Math.hypot(nextX - x, nextY - y);
+            vertexSumX += x;
+            vertexSumY += y;
+            count++;
+
+            double turn = Predicates.orient2d(previous.getX(), previous.getY(), x, y, nextX, nextY);
+
+            if (turn > 0) {
+                leftTurn = true;
+            } else if (turn < 0) {
+                rightTurn = true;
+            }
+
+            previous = v;
+            walkDart = walkDart.getNext();
+        } while (walkDart != dart);
+
+        area[f] = doubleArea / 2;
+        perimeter[f] = length;
+        size[f] = count;
+        convex[f] = (doubleArea >= 0 ? !rightTurn : !leftTurn);
+
+        if (doubleArea != 0) {
+            centroidX[f] = sumX / (3 * doubleArea);
+            centroidY[f] = sumY / (3 * doubleArea);
+        } else {
+            centroidX[f] = vertexSumX / count;
+            centroidY[f] = vertexSumY / count;
+        }
+    }
+
+    public int getFaceCount() {
+        return faces.length;
+    }
+
+    public Face getFace(int index) {
+        return faces[index];
+    }
+
+    /**
+     * Returns the index of the given face, or -1 if it was not a face of the
+     * graph at the last update.
+     *
+     * @param face
+     * @return
+     */
+    public synchronized int indexOf(Face face) {
+        if (faceIndex == null) {
+            faceIndex = new IdentityHashMap<>(faces.length);
+
+            for (int f = 0; f < faces.length; f++) {
+                faceIndex.put(faces[f], f);
+            }
+        }
+
+        Integer index = faceIndex.get(face);
+        return (index == null ? -1 : index);
+    }
+
+    public double[] getArea() {
+        return area;
+    }
+
+    public double[] getPerimeter() {
+        return perimeter;
+    }
+
+    public double[] getCentroidX() {
+        return centroidX;
+    }
+
+    public double[] getCentroidY() {
+        return centroidY;
+    }
+
+    public int[] getSize() {
+        return size;
+    }
+
+    public boolean[] getConvex() {
+        return convex;
+    }
+}
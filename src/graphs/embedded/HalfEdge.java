@@ -11,6 +11,7 @@ public class HalfEdge {
     private HalfEdge next;
     private HalfEdge previous;
     private EmbeddedVertex origin;
+    private int mark;
 
     public Face getFace() {
         return face;
@@ -52,6 +53,22 @@ public class HalfEdge {
         this.twin = twin;
     }
 
+    /**
+     * Returns the mark of this dart. Marks are scratch space for algorithms
+     * that traverse the DCEL, so they can record which darts they visited
+     * without a hash set. A mark is only meaningful to the algorithm that last
+     * set it, and algorithms should reset the marks they rely on first.
+     *
+     * @return
+     */
+    public int getMark() {
+        return mark;
+    }
+
+    public void setMark(int mark) {
+        this.mark = mark;
+    }
+
     public EmbeddedVertex getDestination() {
         return twin.getOrigin();
     }
@@ -0,0 +1,84 @@
+package graphs.embedded;
+
+import java.util.Arrays;
+
+/**
+ * Orders points along a Hilbert curve through their bounding box, so that
+ * points that are consecutive in the order are close together.
+ */
+class HilbertCurve {
+
+    private static final int ORDER = 15; // The curve visits a 2^15 x 2^15 grid, so positions fit in 30 bits
+
+    /**
+     * Returns the indices of the given points, sorted along the curve.
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    static int[] order(double[] x, double[] y) {
+        int n = x.length;
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+
+        double size = Math.max(maxX - minX, maxY - minY);
+        double scale = (size > 0 ? ((1 << ORDER) - 1) / size : 0);
+
+        // Sort on the curve position in the high bits, with the index in the low bits
+        long[] keys = new long[n];
+
+        for (int i = 0; i < n; i++) {
+            int cellX = (int) ((x[i] - minX) * scale);
+            int cellY = (int) ((y[i] - minY) * scale);
+            keys[i] = (index(cellX, cellY) << 32) | i;
+        }
+
+        Arrays.parallelSort(keys);
+
+        int[] order = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+        }
+
+        return order;
+    }
+
+    /**
+     * Returns the position of the given cell along the curve.
+     */
+    static long index(int x, int y) {
+        long d = 0;
+
+        for (int s = 1 << (ORDER - 1); s > 0; s >>= 1) {
+            int rx = ((x & s) > 0 ? 1 : 0);
+            int ry = ((y & s) > 0 ? 1 : 0);
+            d += (long) s * s * ((3 * rx) ^ ry);
+
+            // Rotate the quadrant, so the curve inside it has the standard orientation
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+
+        return d;
+    }
+}
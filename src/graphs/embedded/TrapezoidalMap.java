@@ -0,0 +1,415 @@
+package graphs.embedded;
+
+import graphs.Predicates;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the face of an embedded graph that contains a query point. The edges
+ * are inserted in random order into a trapezoidal map, which takes O(n log n)
+ * expected time. The history of the construction forms a search structure
+ * that answers queries in O(log n) expected time.
+ * <p>
+ * Points are compared lexicographically (by x, then y), which treats vertical
+ * edges as slightly slanted, and all orientation tests are exact. The edges
+ * must not cross. A point on an edge or vertex is reported in one of the
+ * adjacent faces. The map does not follow later changes to the graph.
+ */
+public class TrapezoidalMap {
+
+    private static final int X_NODE = 0;
+    private static final int Y_NODE = 1;
+    private static final int LEAF = 2;
+
+    /**
+     * A trapezoid bounded by two segments (-1 if unbounded) and the vertical
+     * walls through two points. Upper neighbours share the top segment, lower
+     * neighbours the bottom segment.
+     */
+    private static final class Trapezoid {
+
+        int top;
+        int bottom;
+        double leftX, leftY, rightX, rightY;
+        Trapezoid upperLeft, lowerLeft, upperRight, lowerRight;
+        final Node leaf;
+
+        Trapezoid(int top, int bottom, double leftX, double leftY, double rightX, double rightY) {
+            this.top = top;
+            this.bottom = bottom;
+            this.leftX = leftX;
+            this.leftY = leftY;
+            this.rightX = rightX;
+            this.rightY = rightY;
+            leaf = new Node(this);
+        }
+    }
+
+    /**
+     * A node of the search structure. When its trapezoid is split, a leaf is
+     * turned into an inner node in place, as it can have several parents.
+     */
+    private static final class Node {
+
+        int type;
+        double x, y; // The point of an X-node
+        int segment; // The segment of a Y-node
+        Trapezoid trapezoid; // The trapezoid of a leaf
+        Node left, right; // Left and right, or above and below for Y-nodes
+
+        Node(Trapezoid trapezoid) {
+            type = LEAF;
+            this.trapezoid = trapezoid;
+        }
+
+        void makeXNode(double x, double y, Node left, Node right) {
+            type = X_NODE;
+            this.x = x;
+            this.y = y;
+            this.left = left;
+            this.right = right;
+            trapezoid = null;
+        }
+
+        void makeYNode(int segment, Node above, Node below) {
+            type = Y_NODE;
+            this.segment = segment;
+            this.left = above;
+            this.right = below;
+            trapezoid = null;
+        }
+    }
+
+    // Segments go from their lexicographically smallest endpoint (l) to the other (r)
+    private final double[] lx, ly, rx, ry;
+    private final Face[] faceAbove, faceBelow;
+    private final Face outerFace;
+    private final Node root;
+
+    public TrapezoidalMap(EmbeddedGraph graph) {
+        this(graph, new Random());
+    }
+
+    public TrapezoidalMap(EmbeddedGraph graph, Random rand) {
+        // Collect one dart per edge, directed from left to right
+        List<HalfEdge> segments = new ArrayList<>(graph.getDarts().size() / 2);
+
+        for (HalfEdge dart : graph.getDarts()) {
+            dart.setMark(0);
+        }
+
+        for (HalfEdge dart : graph.getDarts()) {
+            if (dart.getMark() == 0) {
+                dart.setMark(1);
+                dart.getTwin().setMark(1);
+
+                EmbeddedVertex o = dart.getOrigin();
+                EmbeddedVertex d = dart.getDestination();
+                segments.add(lexCompare(o.getX(), o.getY(), d.getX(), d.getY()) < 0 ? dart : dart.getTwin());
+            }
+        }
+
+        Collections.shuffle(segments, rand);
+
+        int n = segments.size();
+        lx = new double[n];
+        ly = new double[n];
+        rx = new double[n];
+        ry = new double[n];
+        faceAbove = new Face[n];
+        faceBelow = new Face[n];
+
+        for (int i = 0; i < n; i++) {
+            HalfEdge dart = segments.get(i);
+            lx[i] = dart.getOrigin().getX();
+            ly[i] = dart.getOrigin().getY();
+            rx[i] = dart.getDestination().getX();
+            ry[i] = dart.getDestination().getY();
+            // Faces are on the left of their darts
+            faceAbove[i] = dart.getFace();
+            faceBelow[i] = dart.getTwin().getFace();
+        }
+
+        Face outer = null;
+
+        for (Face face : graph.getFaces()) {
+            if (face.isOuterFace()) {
+                outer = face;
+            }
+        }
+
+        outerFace = outer;
+
+        Trapezoid all = new Trapezoid(-1, -1, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+        root = all.leaf;
+
+        for (int i = 0; i < n; i++) {
+            insert(i);
+        }
+    }
+
+    /**
+     * Returns the face that contains the point (x, y).
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public Face locate(double x, double y) {
+        Trapezoid t = find(x, y);
+
+        if (t.top >= 0) {
+            return faceBelow[t.top];
+        } else if (t.bottom >= 0) {
+            return faceAbove[t.bottom];
+        } else {
+            return outerFace;
+        }
+    }
+
+    /**
+     * Locates all given points. The queries are sorted along a Hilbert curve,
+     * so that consecutive queries follow mostly the same path through the
+     * search structure, and divided over multiple threads.
+     *
+     * @param x
+     * @param y
+     * @return the face containing (x[i], y[i]) for each i
+     */
+    public Face[] locateAll(double[] x, double[] y) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("The coordinate arrays must have the same length.");
+        }
+
+        Face[] result = new Face[x.length];
+        int[] order = HilbertCurve.order(x, y);
+
+        IntStream.range(0, order.length).parallel().forEach(i -> {
+            int query = order[i];
+            result[query] = locate(x[query], y[query]);
+        });
+
+        return result;
+    }
+
+    private Trapezoid find(double x, double y) {
+        Node node = root;
+
+        while (node.type != LEAF) {
+            if (node.type == X_NODE) {
+                node = (lexCompare(x, y, node.x, node.y) < 0 ? node.left : node.right);
+            } else {
+                int s = node.segment;
+                node = (Predicates.orient2d(lx[s], ly[s], rx[s], ry[s], x, y) >= 0 ? node.left : node.right);
+            }
+        }
+
+        return node.trapezoid;
+    }
+
+    /**
+     * Finds the trapezoid that contains the start of segment s, just to the
+     * right of its left endpoint.
+     */
+    private Trapezoid findStart(int s) {
+        double x = lx[s];
+        double y = ly[s];
+        Node node = root;
+
+        while (node.type != LEAF) {
+            if (node.type == X_NODE) {
+                node = (lexCompare(x, y, node.x, node.y) < 0 ? node.left : node.right);
+            } else {
+                int other = node.segment;
+                double orientation = Predicates.orient2d(lx[other], ly[other], rx[other], ry[other], x, y);
+
+                if (orientation == 0) {
+                    // Both segments start here: compare their right endpoints
+                    orientation = Predicates.orient2d(lx[other], ly[other], rx[other], ry[other], rx[s], ry[s]);
+                }
+
+                node = (orientation > 0 ? node.left : node.right);
+            }
+        }
+
+        return node.trapezoid;
+    }
+
+    private void insert(int s) {
+        // Find all trapezoids crossed by the segment, from left to right
+        List<Trapezoid> crossed = new ArrayList<>();
+        Trapezoid t = findStart(s);
+        crossed.add(t);
+
+        while (lexCompare(t.rightX, t.rightY, rx[s], ry[s]) < 0) {
+            if (Predicates.orient2d(lx[s], ly[s], rx[s], ry[s], t.rightX, t.rightY) > 0) {
+                t = t.lowerRight;
+            } else {
+                t = t.upperRight;
+            }
+
+            crossed.add(t);
+        }
+
+        int k = crossed.size();
+        Trapezoid first = crossed.get(0);
+        Trapezoid last = crossed.get(k - 1);
+
+        // The parts above and below the segment, for each crossed trapezoid
+        Trapezoid[] upper = new Trapezoid[k];
+        Trapezoid[] lower = new Trapezoid[k];
+
+        Trapezoid up = new Trapezoid(first.top, s, lx[s], ly[s], rx[s], ry[s]);
+        Trapezoid low = new Trapezoid(s, first.bottom, lx[s], ly[s], rx[s], ry[s]);
+
+        // Left end
+        Trapezoid leftPart = null;
+
+        if (lexCompare(first.leftX, first.leftY, lx[s], ly[s]) < 0) {
+            leftPart = new Trapezoid(first.top, first.bottom, first.leftX, first.leftY, lx[s], ly[s]);
+            leftPart.upperLeft = first.upperLeft;
+            leftPart.lowerLeft = first.lowerLeft;
+            relinkRight(first.upperLeft, first, leftPart, leftPart);
+            relinkRight(first.lowerLeft, first, leftPart, leftPart);
+            leftPart.upperRight = up;
+            leftPart.lowerRight = low;
+            up.upperLeft = leftPart;
+            low.lowerLeft = leftPart;
+        } else {
+            up.upperLeft = first.upperLeft;
+            low.lowerLeft = first.lowerLeft;
+            relinkRight(first.upperLeft, first, up, low);
+            relinkRight(first.lowerLeft, first, up, low);
+        }
+
+        upper[0] = up;
+        lower[0] = low;
+
+        // Middle: at each wall, one side is cut off by the segment and the other side is merged
+        for (int i = 1; i < k; i++) {
+            Trapezoid previous = crossed.get(i - 1);
+            Trapezoid current = crossed.get(i);
+            double wallX = previous.rightX;
+            double wallY = previous.rightY;
+
+            if (Predicates.orient2d(lx[s], ly[s], rx[s], ry[s], wallX, wallY) > 0) {
+                // The wall point is above the segment: the upper part ends here
+                Trapezoid newUp = new Trapezoid(current.top, s, wallX, wallY, rx[s], ry[s]);
+                up.rightX = wallX;
+                up.rightY = wallY;
+
+                Trapezoid aboveWall = previous.upperRight;
+                up.upperRight = aboveWall;
+                relinkLeft(aboveWall, previous, up, up);
+                up.lowerRight = newUp;
+                newUp.lowerLeft = up;
+
+                Trapezoid leftOfWall = current.upperLeft;
+                newUp.upperLeft = leftOfWall;
+                relinkRight(leftOfWall, current, newUp, newUp);
+
+                up = newUp;
+            } else {
+                // The wall point is below the segment: the lower part ends here
+                Trapezoid newLow = new Trapezoid(s, current.bottom, wallX, wallY, rx[s], ry[s]);
+                low.rightX = wallX;
+                low.rightY = wallY;
+
+                Trapezoid belowWall = previous.lowerRight;
+                low.lowerRight = belowWall;
+                relinkLeft(belowWall, previous, low, low);
+                low.upperRight = newLow;
+                newLow.upperLeft = low;
+
+                Trapezoid leftOfWall = current.lowerLeft;
+                newLow.lowerLeft = leftOfWall;
+                relinkRight(leftOfWall, current, newLow, newLow);
+
+                low = newLow;
+            }
+
+            upper[i] = up;
+            lower[i] = low;
+        }
+
+        // Right end
+        Trapezoid rightPart = null;
+
+        if (lexCompare(rx[s], ry[s], last.rightX, last.rightY) < 0) {
+            rightPart = new Trapezoid(last.top, last.bottom, rx[s], ry[s], last.rightX, last.rightY);
+            rightPart.upperRight = last.upperRight;
+            rightPart.lowerRight = last.lowerRight;
+            relinkLeft(last.upperRight, last, rightPart, rightPart);
+            relinkLeft(last.lowerRight, last, rightPart, rightPart);
+            rightPart.upperLeft = up;
+            rightPart.lowerLeft = low;
+            up.upperRight = rightPart;
+            low.lowerRight = rightPart;
+        } else {
+            up.upperRight = last.upperRight;
+            low.lowerRight = last.lowerRight;
+            relinkLeft(last.upperRight, last, up, low);
+            relinkLeft(last.lowerRight, last, up, low);
+        }
+
+        up.lowerRight = null;
+        low.upperRight = null;
+
+        // Update the search structure
+        for (int i = 0; i < k; i++) {
+            Node node = crossed.get(i).leaf;
+            Node split = new Node(null);
+            split.makeYNode(s, upper[i].leaf, lower[i].leaf);
+
+            if (i == k - 1 && rightPart != null) {
+                Node rightSplit = new Node(null);
+                rightSplit.makeXNode(rx[s], ry[s], split, rightPart.leaf);
+                split = rightSplit;
+            }
+
+            if (i == 0 && leftPart != null) {
+                node.makeXNode(lx[s], ly[s], leftPart.leaf, split);
+            } else if (split.type == X_NODE) {
+                node.makeXNode(split.x, split.y, split.left, split.right);
+            } else {
+                node.makeYNode(s, split.left, split.right);
+            }
+        }
+    }
+
+    /**
+     * Replaces old by the new trapezoid sharing the same top (newUpper) or
+     * bottom (newLower) among the right neighbours of the given trapezoid.
+     */
+    private static void relinkRight(Trapezoid t, Trapezoid old, Trapezoid newUpper, Trapezoid newLower) {
+        if (t != null) {
+            if (t.upperRight == old) {
+                t.upperRight = newUpper;
+            }
+
+            if (t.lowerRight == old) {
+                t.lowerRight = newLower;
+            }
+        }
+    }
+
+    private static void relinkLeft(Trapezoid t, Trapezoid old, Trapezoid newUpper, Trapezoid newLower) {
+        if (t != null) {
+            if (t.upperLeft == old) {
+                t.upperLeft = newUpper;
+            }
+
+            if (t.lowerLeft == old) {
+                t.lowerLeft = newLower;
+            }
+        }
+    }
+
+    private static int lexCompare(double x1, double y1, double x2, double y2) {
+        int result = Double.compare(x1, x2);
+        return (result != 0 ? result : Double.compare(y1, y2));
+    }
+}
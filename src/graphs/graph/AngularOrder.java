@@ -0,0 +1,209 @@
+package graphs.graph;
+
+import graphs.Predicates;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * The clockwise order of directions around a center, as used by
+ * ClockwiseOrder and ClockwiseVertexOrder. The order starts at the direction
+ * straight down and continues through left, up and right. Directions are
+ * compared exactly: first by half-plane (x &lt;= 0 before x &gt; 0), then by
+ * the sign of their cross product. No trigonometry is needed, and nearly
+ * collinear directions are always ordered consistently.
+ * <p>
+ * For sorting, a cheap pseudo-angle is used as key, after which the order is
+ * corrected with the exact comparison. As the keys are almost never wrong,
+ * this correction takes linear time.
+ */
+public class AngularOrder {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * Compares the directions from the center (cx, cy) to a and to b. Returns
+     * a negative value if a comes first in clockwise order, a positive value if
+     * b comes first, and zero if they have the same direction.
+     *
+     * @param cx
+     * @param cy
+     * @param ax
+     * @param ay
+     * @param bx
+     * @param by
+     * @return
+     */
+    public static int compare(double cx, double cy, double ax, double ay, double bx, double by) {
+        int halfA = (ax > cx ? 1 : 0);
+        int halfB = (bx > cx ? 1 : 0);
+
+        if (halfA != halfB) {
+            return halfA - halfB;
+        }
+
+        double orientation = Predicates.orient2d(cx, cy, ax, ay, bx, by);
+
+        if (orientation < 0) {
+            return -1; // b is clockwise from a
+        } else if (orientation > 0) {
+            return 1;
+        } else if (halfA == 0) {
+            // Straight down and straight up are both in the left half-plane; down comes first
+            return Integer.compare(Double.compare(ay, cy), Double.compare(by, cy));
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns a key in [0, 4) that increases with the clockwise order of the
+     * direction (vx, vy), starting straight down. It is monotone up to
+     * rounding, so it can be used for sorting, but ties and near-ties must be
+     * resolved with {@link #compare}.
+     *
+     * @param vx
+     * @param vy
+     * @return
+     */
+    public static double pseudoAngle(double vx, double vy) {
+        double length = Math.abs(vx) + Math.abs(vy);
+
+        if (length == 0) {
+            return 0;
+        }
+
+        if (vx > 0) {
+            return 3 - vy / length;
+        } else {
+            return 1 + vy / length;
+        }
+    }
+
+    /**
+     * Sorts all rotation systems at once. For each vertex v, the items in
+     * positions first[v] up to first[v + 1] are sorted in clockwise order
+     * around v, where item i points towards vertex target(i). Vertices are
+     * given by their coordinates in x and y. If parallel is true, the
+     * vertices are distributed over multiple threads.
+     *
+     * @param first
+     * @param items
+     * @param target
+     * @param x
+     * @param y
+     * @param parallel
+     */
+    public static void sortAll(int[] first, int[] items, IntUnaryOperator target, double[] x, double[] y, boolean parallel) {
+        double[] keys = new double[items.length];
+        IntStream vertices = IntStream.range(0, first.length - 1);
+
+        if (parallel) {
+            vertices = vertices.parallel();
+        }
+
+        vertices.forEach(v -> sort(v, first[v], first[v + 1], items, keys, target, x, y));
+    }
+
+    private static void sort(int center, int from, int to, int[] items, double[] keys, IntUnaryOperator target, double[] x, double[] y) {
+        if (to - from < 2) {
+            return;
+        }
+
+        double cx = x[center];
+        double cy = y[center];
+
+        for (int i = from; i < to; i++) {
+            int t = target.applyAsInt(items[i]);
+            keys[i] = pseudoAngle(x[t] - cx, y[t] - cy);
+        }
+
+        sortByKey(items, keys, from, to);
+
+        // Fix the order of near-ties with the exact comparison
+        for (int i = from + 1; i < to; i++) {
+            int item = items[i];
+            int t = target.applyAsInt(item);
+            int j = i - 1;
+
+            while (j >= from) {
+                int s = target.applyAsInt(items[j]);
+
+                if (compare(cx, cy, x[s], y[s], x[t], y[t]) <= 0) {
+                    break;
+                }
+
+                items[j + 1] = items[j];
+                j--;
+            }
+
+            items[j + 1] = item;
+        }
+    }
+
+    /**
+     * Sorts items[from..to) by increasing key, permuting the keys along.
+     */
+    private static void sortByKey(int[] items, double[] keys, int from, int to) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            // Quicksort step with the median of three as pivot
+            int mid = (from + to) >>> 1;
+            double a = keys[from];
+            double b = keys[mid];
+            double c = keys[to - 1];
+            double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+
+            int i = from;
+            int j = to - 1;
+
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+
+                while (keys[j] > pivot) {
+                    j--;
+                }
+
+                if (i <= j) {
+                    swap(items, keys, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            // Recurse on the smaller part, loop on the larger one
+            if (j + 1 - from < to - i) {
+                sortByKey(items, keys, from, j + 1);
+                from = i;
+            } else {
+                sortByKey(items, keys, i, to);
+                to = j + 1;
+            }
+        }
+
+        for (int i = from + 1; i < to; i++) {
+            int item = items[i];
+            double key = keys[i];
+            int j = i - 1;
+
+            while (j >= from && keys[j] > key) {
+                items[j + 1] = items[j];
+                keys[j + 1] = keys[j];
+                j--;
+            }
+
+            items[j + 1] = item;
+            keys[j + 1] = key;
+        }
+    }
+
+    private static void swap(int[] items, double[] keys, int i, int j) {
+        int item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+    }
+}
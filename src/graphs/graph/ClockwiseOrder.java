@@ -15,22 +15,9 @@ public class ClockwiseOrder implements Comparator<Edge> {
     }
 
     public int compare(Edge e1, Edge e2) {
-        // compare the angles of e1 and e2
-        return Double.compare(getAngle(e1), getAngle(e2));
-    }
-
-    private double getAngle(Edge e) {
-        GraphVertex dest = (e.getVA() == center ? e.getVB() : e.getVA());
-
-        double vx = dest.getX() - center.getX();
-        double vy = dest.getY() - center.getY();
-
-        double angle = Math.acos(vy / Math.sqrt(vx * vx + vy * vy));
+        GraphVertex dest1 = (e1.getVA() == center ? e1.getVB() : e1.getVA());
+        GraphVertex dest2 = (e2.getVA() == center ? e2.getVB() : e2.getVA());
 
-        if (vx > 0) {
-            return angle;
-        } else {
-            return -angle;
-        }
+        return AngularOrder.compare(center.getX(), center.getY(), dest1.getX(), dest1.getY(), dest2.getX(), dest2.getY());
     }
 }
@@ -15,19 +15,6 @@ public class ClockwiseVertexOrder implements Comparator<GraphVertex> {
     }
 
     public int compare(GraphVertex v1, GraphVertex v2) {
-        return Double.compare(getAngle(v1), getAngle(v2));
-    }
-
-    private double getAngle(GraphVertex v) {
-        double vx = v.getX() - center.getX();
-        double vy = v.getY() - center.getY();
-
-        double angle = Math.acos(vy / Math.sqrt(vx * vx + vy * vy));
-
-        if (vx > 0) {
-            return angle;
-        } else {
-            return -angle;
-        }
+        return AngularOrder.compare(center.getX(), center.getY(), v1.getX(), v1.getY(), v2.getX(), v2.getY());
     }
 }
@@ -0,0 +1,119 @@
+package graphs.graph;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Reads graphs in the DIMACS formats. A graph file contains a problem line
+ * "p &lt;type&gt; n m", followed by arcs "a u v [w]" (shortest-path
+ * <code>.gr</code> files), which become directed edges, or edges "e u v"
+ * (<code>.col</code> files), which become undirected edges. Vertex ids start
+ * at 1 and weights are ignored. Lines starting with 'c' are comments.
+ * <p>
+ * Vertex positions are read from a coordinate file, containing lines "v id x
+ * y" (<code>.co</code> files). Without a coordinate file, the vertices are
+ * placed on a circle.
+ */
+public class DimacsReader {
+
+    public static Graph readGraph(Path graphFile) throws IOException {
+        return readGraph(graphFile, null);
+    }
+
+    public static Graph readGraph(Path graphFile, Path coordinateFile) throws IOException {
+        LineScanner scanner = new LineScanner();
+
+        try (BufferedReader in = Files.newBufferedReader(graphFile, Charset.forName("UTF-8"))) {
+            // Find the problem line, which tells us how much to allocate
+            String line = nextContentLine(in, scanner);
+
+            if (line == null || scanner.nextChar() != 'p') {
+                throw new IOException("Incorrect file format: No problem line found.");
+            }
+
+            scanner.nextToken(); // The problem type
+            int nVertices = scanner.nextInt();
+            int nEdges = scanner.nextInt();
+
+            Graph graph = new Graph(nVertices, nEdges);
+
+            for (int i = 0; i < nVertices; i++) {
+                graph.addVertex(new GraphVertex(0, 0));
+            }
+
+            List<GraphVertex> vertices = graph.getVertices();
+
+            if (coordinateFile == null) {
+                EdgeListReader.placeOnCircle(vertices);
+            } else {
+                readCoordinates(coordinateFile, vertices, scanner);
+            }
+
+            // Read all edges
+            line = nextContentLine(in, scanner);
+
+            while (line != null) {
+                char type = scanner.nextChar();
+
+                if (type == 'a' || type == 'e') {
+                    int v1 = scanner.nextInt();
+                    int v2 = scanner.nextInt();
+
+                    graph.addEdge(getVertex(vertices, v1, line), getVertex(vertices, v2, line), type == 'a');
+                }
+
+                line = nextContentLine(in, scanner);
+            }
+
+            return graph;
+        }
+    }
+
+    private static void readCoordinates(Path file, List<GraphVertex> vertices, LineScanner scanner) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file, Charset.forName("UTF-8"))) {
+            String line = nextContentLine(in, scanner);
+
+            while (line != null) {
+                if (scanner.nextChar() == 'v') {
+                    GraphVertex v = getVertex(vertices, scanner.nextInt(), line);
+                    v.setX(scanner.nextDouble());
+                    v.setY(scanner.nextDouble());
+                }
+
+                line = nextContentLine(in, scanner);
+            }
+        }
+    }
+
+    /**
+     * Returns the next line that is neither blank nor a comment, with the
+     * scanner positioned at its start, or null at the end of the input.
+     */
+    private static String nextContentLine(BufferedReader in, LineScanner scanner) throws IOException {
+        String line = in.readLine();
+
+        while (line != null) {
+            scanner.reset(line);
+
+            if (scanner.hasNext() && !scanner.nextStartsWith('c')) {
+                return line;
+            }
+
+            line = in.readLine();
+        }
+
+        return null;
+    }
+
+    private static GraphVertex getVertex(List<GraphVertex> vertices, int id, String line) throws IOException {
+        if (id < 1 || id > vertices.size()) {
+            throw new IOException("Incorrect file format: Vertex id " + id + " out of range in line \"" + line + "\".");
+        }
+
+        return vertices.get(id - 1);
+    }
+}
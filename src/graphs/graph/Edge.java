@@ -1,6 +1,6 @@
 package graphs.graph;
 
-import java.awt.geom.Line2D;
+import graphs.Predicates;
 
 /**
  *
@@ -97,7 +97,7 @@ public class Edge {
      * @return
      */
     public boolean intersects(Edge edge) {
-        return Line2D.linesIntersect(vA.getX(), vA.getY(), vB.getX(), vB.getY(), edge.getVA().getX(), edge.getVA().getY(), edge.getVB().getX(), edge.getVB().getY());
+        return Predicates.segmentsIntersect(vA.getX(), vA.getY(), vB.getX(), vB.getY(), edge.getVA().getX(), edge.getVA().getY(), edge.getVB().getX(), edge.getVB().getY());
     }
 
     /**
@@ -111,7 +111,7 @@ public class Edge {
         if (vA == edge.getVA() || vA == edge.getVB() || vB == edge.getVA() || vB == edge.getVB()) {
             return false;
         } else {
-            return Line2D.linesIntersect(vA.getX(), vA.getY(), vB.getX(), vB.getY(), edge.getVA().getX(), edge.getVA().getY(), edge.getVB().getX(), edge.getVB().getY());
+            return intersects(edge);
         }
     }
 
@@ -0,0 +1,96 @@
+package graphs.graph;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Reads graphs from plain edge lists: one edge per line, given by two
+ * non-negative integer vertex ids separated by whitespace. Any further values
+ * on a line (such as weights) are ignored, as are blank lines and lines
+ * starting with '#' or '%'. A vertex is created for each id that occurs in an
+ * edge, in order of first appearance; ids do not need to be dense. Edge
+ * lists carry no coordinates, so the vertices are placed on a circle.
+ * <p>
+ * For undirected graphs, an edge that occurs more than once, in either
+ * direction, is only added once, as edge-list dumps often list both "u v" and
+ * "v u". Self-loops are skipped, but their vertices are still created.
+ */
+public class EdgeListReader {
+
+    public static Graph readGraph(Path file) throws IOException {
+        return readGraph(file, false);
+    }
+
+    public static Graph readGraph(Path file, boolean directed) throws IOException {
+        Graph graph = new Graph();
+        HashMap<Integer, GraphVertex> vertexById = new HashMap<>();
+        HashSet<Long> undirectedEdges = new HashSet<>();
+        LineScanner scanner = new LineScanner();
+
+        try (BufferedReader in = Files.newBufferedReader(file, Charset.forName("UTF-8"))) {
+            String line = in.readLine();
+
+            while (line != null) {
+                scanner.reset(line);
+
+                if (scanner.hasNext() && !scanner.nextStartsWith('#') && !scanner.nextStartsWith('%')) {
+                    int a = scanner.nextInt();
+                    int b = scanner.nextInt();
+
+                    if (a < 0 || b < 0) {
+                        throw new IOException("Incorrect file format: Negative vertex id in line \"" + line + "\".");
+                    }
+
+                    GraphVertex vA = getOrCreateVertex(graph, vertexById, a);
+                    GraphVertex vB = getOrCreateVertex(graph, vertexById, b);
+
+                    // Skip self-loops. Both ids are non-negative ints, so the smaller and larger id fit in one long.
+                    if (a != b && (directed || undirectedEdges.add(((long) Math.min(a, b) << 32) | Math.max(a, b)))) {
+                        graph.addEdge(vA, vB, directed);
+                    }
+                }
+
+                line = in.readLine();
+            }
+        }
+
+        placeOnCircle(graph.getVertices());
+
+        return graph;
+    }
+
+    private static GraphVertex getOrCreateVertex(Graph graph, HashMap<Integer, GraphVertex> vertexById, int id) {
+        GraphVertex v = vertexById.get(id);
+
+        if (v == null) {
+            v = new GraphVertex(0, 0);
+            vertexById.put(id, v);
+            graph.addVertex(v);
+        }
+
+        return v;
+    }
+
+    /**
+     * Places the given vertices evenly on a circle, in order. Used for formats
+     * that do not store vertex positions.
+     *
+     * @param vertices
+     */
+    static void placeOnCircle(List<GraphVertex> vertices) {
+        int n = vertices.size();
+        double angle = 2 * Math.PI / Math.max(n, 1);
+
+        for (int i = 0; i < n; i++) {
+            GraphVertex v = vertices.get(i);
+            v.setX(200 + 100 * Math.cos(i * angle));
+            v.setY(200 + 100 * Math.sin(i * angle));
+        }
+    }
+}
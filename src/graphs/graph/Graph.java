@@ -17,6 +17,18 @@ public class Graph {
         edges = new ArrayList<Edge>();
     }
 
+    /**
+     * Creates a new empty graph with room for the given number of vertices and
+     * edges.
+     *
+     * @param expectedVertices
+     * @param expectedEdges
+     */
+    public Graph(int expectedVertices, int expectedEdges) {
+        vertices = new ArrayList<GraphVertex>(expectedVertices);
+        edges = new ArrayList<Edge>(expectedEdges);
+    }
+
     /**
      * Creates a new graph that is a copy of the given graph.
      *
@@ -0,0 +1,235 @@
+package graphs.graph;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads many graph files concurrently with {@link GraphReader}. Reads run on a
+ * fixed number of worker threads, and at most a bounded number of reads can be
+ * pending at any time: submitting a read blocks until one of the pending reads
+ * has finished. This keeps memory bounded when loading large directories.
+ */
+public class GraphLoader implements AutoCloseable {
+
+    private static final AtomicInteger LOADER_COUNT = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final Semaphore pending;
+
+    /**
+     * Creates a loader with a thread for each available processor, allowing
+     * twice as many pending reads.
+     */
+    public GraphLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a loader that performs at most the given number of reads at the
+     * same time, allowing twice as many pending reads.
+     *
+     * @param concurrency
+     */
+    public GraphLoader(int concurrency) {
+        this(concurrency, 2 * concurrency);
+    }
+
+    /**
+     * Creates a loader that performs at most concurrency reads at the same
+     * time. Submitting a read blocks while maxPending reads are queued or
+     * running.
+     *
+     * @param concurrency
+     * @param maxPending
+     */
+    public GraphLoader(int concurrency, int maxPending) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("At least one thread required.");
+        }
+        if (maxPending < concurrency) {
+            throw new IllegalArgumentException("The number of pending reads must be at least the concurrency.");
+        }
+
+        executor = Executors.newFixedThreadPool(concurrency, new LoaderThreadFactory());
+        pending = new Semaphore(maxPending);
+    }
+
+    /**
+     * Schedules the given file to be read. Blocks while the maximum number of
+     * reads is pending. The returned future completes exceptionally with an
+     * IOException if the file could not be read, and is cancelled if the
+     * loader is closed by an interrupted thread before the read started.
+     *
+     * @param file
+     * @return
+     * @throws InterruptedException
+     */
+    public CompletableFuture<Graph> load(Path file) throws InterruptedException {
+        pending.acquire();
+
+        ReadTask task = new ReadTask(file);
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            pending.release();
+            throw ex;
+        }
+
+        return task.result;
+    }
+
+    /**
+     * Reads all given files and returns the resulting graphs in the same
+     * order.
+     *
+     * @param files
+     * @return
+     * @throws IOException if any of the files could not be read
+     * @throws InterruptedException
+     */
+    public List<Graph> loadAll(List<Path> files) throws IOException, InterruptedException {
+        List<CompletableFuture<Graph>> futures = new ArrayList<>(files.size());
+
+        for (Path file : files) {
+            futures.add(load(file));
+        }
+
+        List<Graph> graphs = new ArrayList<>(files.size());
+
+        for (CompletableFuture<Graph> future : futures) {
+            graphs.add(await(future));
+        }
+
+        return graphs;
+    }
+
+    /**
+     * Reads all given files and passes each graph to the consumer as soon as
+     * it has been read. Only a bounded number of graphs is in memory at any
+     * time, as long as the consumer does not keep them. The consumer is called
+     * from the worker threads, possibly concurrently, in no particular order.
+     *
+     * @param files
+     * @param consumer
+     * @throws IOException if any of the files could not be read
+     * @throws InterruptedException
+     */
+    public void loadAll(Iterable<Path> files, BiConsumer<Path, Graph> consumer) throws IOException, InterruptedException {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (Path file : files) {
+            futures.add(load(file).thenAccept(graph -> consumer.accept(file, graph)));
+        }
+
+        for (CompletableFuture<Void> future : futures) {
+            await(future);
+        }
+    }
+
+    /**
+     * Stops accepting new reads and waits for the pending reads to finish. If
+     * the calling thread is interrupted while waiting, the reads that have not
+     * started yet are cancelled, so that their futures complete with a
+     * CancellationException, and the interrupt flag is restored.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting for the pending reads
+            }
+        } catch (InterruptedException ex) {
+            for (Runnable task : executor.shutdownNow()) {
+                ((ReadTask) task).cancel();
+            }
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Reads a single file. The task keeps its future, so that it can be
+     * completed when the task is cancelled before it runs.
+     */
+    private class ReadTask implements Runnable {
+
+        private final Path file;
+        private final CompletableFuture<Graph> result = new CompletableFuture<>();
+
+        ReadTask(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            Graph graph = null;
+            Throwable failure = null;
+
+            try {
+                graph = GraphReader.readGraph(file);
+            } catch (Throwable t) {
+                failure = t;
+            }
+
+            // Release before completing, so that callbacks can schedule new reads
+            pending.release();
+
+            if (failure == null) {
+                result.complete(graph);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        }
+
+        void cancel() {
+            pending.release();
+            result.cancel(false);
+        }
+    }
+
+    private static class LoaderThreadFactory implements ThreadFactory {
+
+        private final int loader = LOADER_COUNT.incrementAndGet();
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "GraphLoader-" + loader + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package graphs.graph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads graphs from GraphML files in a single streaming pass. Vertex positions
+ * are taken from node data whose key has attr.name "x" and "y". If no node has
+ * a position, the vertices are placed on a circle. Nested graphs are
+ * flattened, and hyperedges and ports are ignored.
+ */
+public class GraphMLReader {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    public static Graph readGraph(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+
+            try {
+                return readGraph(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Incorrect file format: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static Graph readGraph(XMLStreamReader reader) throws XMLStreamException, IOException {
+        Graph graph = new Graph();
+        Map<String, GraphVertex> vertexById = new HashMap<>();
+
+        // Keys that hold the x and y coordinates of nodes
+        String xKey = null;
+        String yKey = null;
+        // The edgedefault of each open graph element, innermost first
+        Deque<Boolean> directedByDefault = new ArrayDeque<>();
+        boolean hasPositions = false;
+
+        GraphVertex currentVertex = null;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "key": {
+                        String name = reader.getAttributeValue(null, "attr.name");
+                        String domain = reader.getAttributeValue(null, "for");
+
+                        if (domain == null || "node".equals(domain) || "all".equals(domain)) {
+                            if ("x".equals(name)) {
+                                xKey = reader.getAttributeValue(null, "id");
+                            } else if ("y".equals(name)) {
+                                yKey = reader.getAttributeValue(null, "id");
+                            }
+                        }
+                        break;
+                    }
+                    case "graph":
+                        directedByDefault.push("directed".equals(reader.getAttributeValue(null, "edgedefault")));
+                        break;
+                    case "node":
+                        currentVertex = getOrCreateVertex(graph, vertexById, requireAttribute(reader, "id"));
+                        break;
+                    case "edge": {
+                        GraphVertex source = getOrCreateVertex(graph, vertexById, requireAttribute(reader, "source"));
+                        GraphVertex target = getOrCreateVertex(graph, vertexById, requireAttribute(reader, "target"));
+                        String directed = reader.getAttributeValue(null, "directed");
+
+                        graph.addEdge(source, target, directed == null ? Boolean.TRUE.equals(directedByDefault.peek()) : "true".equals(directed));
+                        break;
+                    }
+                    case "data": {
+                        if (currentVertex != null) {
+                            String key = reader.getAttributeValue(null, "key");
+
+                            if (key != null && (key.equals(xKey) || key.equals(yKey))) {
+                                double value = parseDouble(reader.getElementText());
+
+                                if (key.equals(xKey)) {
+                                    currentVertex.setX(value);
+                                } else {
+                                    currentVertex.setY(value);
+                                }
+
+                                hasPositions = true;
+                            }
+                        }
+                        break;
+                    }
+                    default:
+                        break;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if ("node".equals(reader.getLocalName())) {
+                    currentVertex = null;
+                } else if ("graph".equals(reader.getLocalName())) {
+                    directedByDefault.poll();
+                }
+            }
+        }
+
+        if (!hasPositions) {
+            EdgeListReader.placeOnCircle(graph.getVertices());
+        }
+
+        return graph;
+    }
+
+    private static GraphVertex getOrCreateVertex(Graph graph, Map<String, GraphVertex> vertexById, String id) {
+        GraphVertex v = vertexById.get(id);
+
+        if (v == null) {
+            v = new GraphVertex(0, 0);
+            vertexById.put(id, v);
+            graph.addVertex(v);
+        }
+
+        return v;
+    }
+
+    private static String requireAttribute(XMLStreamReader reader, String name) throws IOException {
+        String value = reader.getAttributeValue(null, name);
+
+        if (value == null) {
+            throw new IOException("Incorrect file format: Element \"" + reader.getLocalName() + "\" at line " + reader.getLocation().getLineNumber() + " has no attribute \"" + name + "\".");
+        }
+
+        return value;
+    }
+
+    private static double parseDouble(String s) throws IOException {
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException ex) {
+            throw new IOException("Incorrect file format: Expected a number but found \"" + s + "\".", ex);
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
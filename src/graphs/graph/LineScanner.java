@@ -0,0 +1,118 @@
+package graphs.graph;
+
+import java.io.IOException;
+
+/**
+ * Splits a line into whitespace-separated tokens without creating
+ * intermediate arrays. Integers are parsed in place.
+ */
+class LineScanner {
+
+    private String line;
+    private int position;
+
+    void reset(String line) {
+        this.line = line;
+        this.position = 0;
+    }
+
+    boolean hasNext() {
+        skipWhitespace();
+        return position < line.length();
+    }
+
+    /**
+     * Returns true if the next token starts with the given character.
+     */
+    boolean nextStartsWith(char c) {
+        skipWhitespace();
+        return position < line.length() && line.charAt(position) == c;
+    }
+
+    String nextToken() throws IOException {
+        skipWhitespace();
+
+        if (position >= line.length()) {
+            throw new IOException("Incorrect file format: Missing value in line \"" + line + "\".");
+        }
+
+        int start = position;
+
+        while (position < line.length() && !Character.isWhitespace(line.charAt(position))) {
+            position++;
+        }
+
+        return line.substring(start, position);
+    }
+
+    char nextChar() throws IOException {
+        skipWhitespace();
+
+        if (position >= line.length()) {
+            throw new IOException("Incorrect file format: Missing value in line \"" + line + "\".");
+        }
+
+        return line.charAt(position++);
+    }
+
+    int nextInt() throws IOException {
+        skipWhitespace();
+
+        int start = position;
+        boolean negative = false;
+
+        if (position < line.length() && (line.charAt(position) == '-' || line.charAt(position) == '+')) {
+            negative = line.charAt(position) == '-';
+            position++;
+        }
+
+        long value = 0;
+        int digits = 0;
+
+        while (position < line.length()) {
+            char c = line.charAt(position);
+
+            if (c < '0' || c > '9') {
+                break;
+            }
+
+            value = 10 * value + (c - '0');
+            digits++;
+            position++;
+
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new IOException("Incorrect file format: Number out of range in line \"" + line + "\".");
+            }
+        }
+
+        if (digits == 0 || (position < line.length() && !Character.isWhitespace(line.charAt(position)))) {
+            throw new IOException("Incorrect file format: Expected an integer at position " + start + " in line \"" + line + "\".");
+        }
+
+        if (negative) {
+            value = -value;
+        }
+
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Incorrect file format: Number out of range in line \"" + line + "\".");
+        }
+
+        return (int) value;
+    }
+
+    double nextDouble() throws IOException {
+        String token = nextToken();
+
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Incorrect file format: Expected a number but found \"" + token + "\".", ex);
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+            position++;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package graphs.ipe;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Performs the writes of an IPEWriter on a dedicated background thread. Write
+ * commands are put in a lock-free queue; a semaphore bounds the number of
+ * queued commands, so that a producer that is much faster than the disk
+ * blocks instead of using up all memory. The background thread executes the
+ * commands in batches.
+ */
+class AsyncIPEWriter {
+
+    /**
+     * A deferred write. It must capture all values it needs, as it is executed
+     * after the calling code has moved on.
+     */
+    interface Command {
+
+        void writeTo(IPEWriter out) throws IOException;
+    }
+
+    private static final int CAPACITY = 4096;
+    private static final int BATCH_SIZE = 256;
+
+    private final IPEWriter out;
+    private final ConcurrentLinkedQueue<Command> queue = new ConcurrentLinkedQueue<>();
+    private final Semaphore freeSlots = new Semaphore(CAPACITY);
+    private final Thread thread;
+    private volatile boolean sleeping = false;
+    private volatile boolean closed = false;
+    private volatile IOException failure = null;
+
+    AsyncIPEWriter(IPEWriter out) {
+        this.out = out;
+        thread = new Thread(this::run, "IPEExporter writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues the given command. Blocks while the queue is full.
+     *
+     * @param command
+     * @throws IOException if an earlier command failed
+     */
+    void submit(Command command) throws IOException {
+        checkFailure();
+
+        if (closed) {
+            throw new IllegalStateException("Writer is closed.");
+        }
+
+        try {
+            freeSlots.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the writer.");
+        }
+
+        queue.offer(command);
+
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Waits until all queued commands have been executed and stops the
+     * background thread.
+     *
+     * @throws IOException if any command failed
+     */
+    void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(thread);
+
+        boolean interrupted = false;
+
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Writing the IPE file failed.", failure);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            int executed = 0;
+            Command command = queue.poll();
+
+            while (command != null) {
+                execute(command);
+                executed++;
+
+                if (executed == BATCH_SIZE) {
+                    freeSlots.release(executed);
+                    executed = 0;
+                }
+
+                command = queue.poll();
+            }
+
+            if (executed > 0) {
+                freeSlots.release(executed);
+            }
+
+            if (closed && queue.isEmpty()) {
+                break;
+            }
+
+            // Sleep until a producer signals new work. The flag is set before
+            // checking the queue, so a producer that adds work after the
+            // check always sees it and wakes us up.
+            sleeping = true;
+
+            if (queue.isEmpty() && !closed) {
+                LockSupport.park(this);
+            }
+
+            sleeping = false;
+        }
+
+        if (failure == null) {
+            try {
+                out.flush();
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+    }
+
+    private void execute(Command command) {
+        // After a failure, remaining commands are discarded
+        if (failure == null) {
+            try {
+                command.writeTo(out);
+            } catch (IOException ex) {
+                failure = ex;
+            } catch (RuntimeException ex) {
+                failure = new IOException(ex);
+            }
+        }
+    }
+}
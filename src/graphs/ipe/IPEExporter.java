@@ -2,22 +2,35 @@ package graphs.ipe;
 
 import graphs.embedded.EmbeddedGraph;
 import graphs.embedded.EmbeddedVertex;
+import graphs.embedded.Face;
 import graphs.embedded.HalfEdge;
 import graphs.graph.Edge;
 import graphs.graph.Graph;
 import graphs.graph.GraphVertex;
 import graphs.graph.Vertex;
 import java.awt.Color;
+import java.awt.geom.Rectangle2D;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 /**
  *
@@ -273,12 +286,21 @@ public class IPEExporter {
             + "<layer name=\"Edges\"/>\n"
             // The default view showing everything
             + "<view layers=\"Vertices Edges\" active=\"Vertices\"/>\n";
+    private static final String FACE_LAYERS
+            = // Beginning of the IPE page
+            "<page>\n"
+            // Layers
+            + "<layer name=\"Faces\"/>\n"
+            + "<layer name=\"Vertices\"/>\n"
+            + "<layer name=\"Edges\"/>\n"
+            // The default view showing everything
+            + "<view layers=\"Faces Vertices Edges\" active=\"Vertices\"/>\n";
     private static final String PAGE_BREAK
             = "</page>\n";
     private static final String POST_TAGS
             = "</page>\n</ipe>";
 
-    private static class Transformation {
+    static class Transformation {
 
         double factor = 1;
         double xTranslate = 0;
@@ -302,42 +324,352 @@ public class IPEExporter {
     }
 
     public static void exportGraphs(File file, Collection<? extends Graph> graphs, boolean useIPE6) throws IOException {
-        try (BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+        exportGraphs(file, graphs, useIPE6, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Exports each graph to a separate page. Up to parallelism pages are
+     * rendered concurrently into memory, and at most 2 * parallelism pages
+     * are in flight in total, counting both those being rendered and those
+     * waiting to be written, so memory use does not grow with the number of
+     * pages.
+     *
+     * @param file
+     * @param graphs
+     * @param useIPE6
+     * @param parallelism
+     * @throws IOException
+     */
+    public static void exportGraphs(File file, Collection<? extends Graph> graphs, boolean useIPE6, int parallelism) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            IPEWriter out = new IPEWriter(writer);
+
             if (useIPE6) {
                 out.write(IPE6HEADER);
             } else {
                 out.write(IPE7HEADER);
             }
 
+            if (parallelism <= 1 || graphs.size() <= 1) {
+                boolean first = true;
+
+                for (Graph graph : graphs) {
+                    if (first) {
+                        first = false;
+                    } else {
+                        out.write(PAGE_BREAK);
+                    }
+
+                    exportPage(out, graph, useIPE6);
+                }
+            } else {
+                exportPagesInParallel(out, graphs, useIPE6, parallelism);
+            }
+
+            out.write(POST_TAGS);
+            out.flush();
+        }
+    }
+
+    private static void exportPagesInParallel(IPEWriter out, Collection<? extends Graph> graphs, boolean useIPE6, int parallelism) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+
+        try {
+            // Pages that are being rendered or are waiting to be written, in order
+            ArrayDeque<Future<IPEWriter>> window = new ArrayDeque<>(2 * parallelism);
+            Iterator<? extends Graph> pages = graphs.iterator();
             boolean first = true;
 
-            for (Graph graph : graphs) {
+            while (pages.hasNext() || !window.isEmpty()) {
+                while (pages.hasNext() && window.size() < 2 * parallelism) {
+                    Graph graph = pages.next();
+
+                    window.add(executor.submit(() -> {
+                        IPEWriter page = new IPEWriter();
+                        exportPage(page, graph, useIPE6);
+                        return page;
+                    }));
+                }
+
+                IPEWriter page = getPage(window.remove());
+
                 if (first) {
                     first = false;
                 } else {
                     out.write(PAGE_BREAK);
                 }
 
-                out.write(LAYERS);
+                out.write(page);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-                Transformation t = computeScaleFactors(graph.getVertices());
+    private static IPEWriter getPage(Future<IPEWriter> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while exporting.");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
 
-                for (Edge e : graph.getEdges()) {
-                    exportEdge(out, t, e.getVA().getX(), e.getVA().getY(), e.getVB().getX(), e.getVB().getY(), "Edges", Color.black, 1);
-                }
+    private static void exportPage(IPEWriter out, Graph graph, boolean useIPE6) throws IOException {
+        out.write(LAYERS);
 
-                // Vertices last, so they appear on top
-                for (GraphVertex v : graph.getVertices()) {
-                    exportVertex(out, t, v.getX(), v.getY(), "Vertices", Color.blue, useIPE6);
+        Transformation t = computeScaleFactors(graph.getVertices());
+
+        for (Edge e : graph.getEdges()) {
+            out.writeEdge(t, e.getVA().getX(), e.getVA().getY(), e.getVB().getX(), e.getVB().getY(), "Edges", Color.black, 1);
+        }
+
+        // Vertices last, so they appear on top
+        for (GraphVertex v : graph.getVertices()) {
+            out.writeVertex(t, v.getX(), v.getY(), "Vertices", Color.blue, useIPE6);
+        }
+    }
+
+    /**
+     * Exports a simplified drawing of the graph, for graphs that are too dense
+     * to export element by element. Vertices are snapped to a grid whose cells
+     * have the given size in page coordinates, and only one vertex is drawn
+     * per cell. Edges are drawn between the snapped positions: edges that
+     * collapse to a point or coincide with an earlier edge are dropped, and
+     * the remaining edges are merged into polylines.
+     * <p>
+     * If a viewport is given, only the vertices inside it and the edges that
+     * intersect it are exported, and the viewport is scaled to fill the page.
+     *
+     * @param file
+     * @param graph
+     * @param useIPE6
+     * @param tolerance the grid size, in points
+     * @param viewport the region to export, or null to export everything
+     * @throws IOException
+     */
+    public static void exportSimplifiedGraph(File file, Graph graph, boolean useIPE6, double tolerance, Rectangle2D viewport) throws IOException {
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("The tolerance must be positive.");
+        }
+
+        Transformation t;
+
+        if (viewport == null) {
+            t = computeScaleFactors(graph.getVertices());
+        } else {
+            t = computeScaleFactors(Arrays.asList(new Vertex(viewport.getMinX(), viewport.getMinY()), new Vertex(viewport.getMaxX(), viewport.getMaxY())));
+        }
+
+        // Snap the vertices to grid cells. Each occupied cell becomes a node,
+        // positioned at the first vertex that was snapped to it.
+        int n = graph.getVertices().size();
+        IdentityHashMap<GraphVertex, Integer> nodeOf = new IdentityHashMap<>(n);
+        HashMap<Long, Integer> cellNodes = new HashMap<>();
+        double[] nodeX = new double[n];
+        double[] nodeY = new double[n];
+        boolean[] drawNode = new boolean[n];
+        int nNodes = 0;
+
+        for (GraphVertex v : graph.getVertices()) {
+            double x = t.transformX(v.getX());
+            double y = t.transformY(v.getY());
+            long cell = ((long) Math.floor(x / tolerance) << 32) ^ ((long) Math.floor(y / tolerance) & 0xFFFFFFFFL);
+            Integer node = cellNodes.get(cell);
+
+            if (node == null) {
+                node = nNodes;
+                nodeX[node] = x;
+                nodeY[node] = y;
+                cellNodes.put(cell, node);
+                nNodes++;
+            }
+
+            nodeOf.put(v, node);
+
+            if (viewport == null || viewport.contains(v.getX(), v.getY())) {
+                drawNode[node] = true;
+            }
+        }
+
+        // Keep the edges that are visible and do not collapse or coincide after snapping
+        HashSet<Long> keptEdges = new HashSet<>();
+        int[] edgeA = new int[graph.getEdges().size()];
+        int[] edgeB = new int[graph.getEdges().size()];
+        int nEdges = 0;
+
+        for (Edge e : graph.getEdges()) {
+            GraphVertex vA = e.getVA();
+            GraphVertex vB = e.getVB();
+
+            if (viewport != null && !viewport.intersectsLine(vA.getX(), vA.getY(), vB.getX(), vB.getY())) {
+                continue;
+            }
+
+            int a = nodeOf.get(vA);
+            int b = nodeOf.get(vB);
+
+            if (a != b && keptEdges.add(((long) Math.min(a, b) << 32) | Math.max(a, b))) {
+                edgeA[nEdges] = a;
+                edgeB[nEdges] = b;
+                nEdges++;
+            }
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            IPEWriter out = new IPEWriter(writer);
+
+            if (useIPE6) {
+                out.write(IPE6HEADER);
+            } else {
+                out.write(IPE7HEADER);
+            }
+
+            out.write(LAYERS);
+
+            exportPolylines(out, nNodes, nodeX, nodeY, nEdges, edgeA, edgeB);
+
+            // Vertices last, so they appear on top
+            Transformation identity = new Transformation();
+
+            for (int i = 0; i < nNodes; i++) {
+                if (drawNode[i]) {
+                    out.writeVertex(identity, nodeX[i], nodeY[i], "Vertices", Color.blue, useIPE6);
                 }
             }
 
             out.write(POST_TAGS);
+            out.flush();
         }
     }
 
+    private static final int MAX_PATH_SEGMENTS = 1000; // Larger paths are hard to edit in IPE
+
+    /**
+     * Covers the given edges by as few trails as the greedy strategy finds,
+     * starting trails at nodes of odd degree first, and writes these as
+     * polylines.
+     */
+    private static void exportPolylines(IPEWriter out, int nNodes, double[] nodeX, double[] nodeY, int nEdges, int[] edgeA, int[] edgeB) throws IOException {
+        // Build the adjacency lists
+        int[] start = new int[nNodes + 1];
+
+        for (int e = 0; e < nEdges; e++) {
+            start[edgeA[e] + 1]++;
+            start[edgeB[e] + 1]++;
+        }
+
+        for (int i = 0; i < nNodes; i++) {
+            start[i + 1] += start[i];
+        }
+
+        int[] incident = new int[2 * nEdges];
+        int[] next = Arrays.copyOf(start, nNodes); // The first adjacency entry that may still be unused
+
+        for (int e = 0; e < nEdges; e++) {
+            incident[next[edgeA[e]]++] = e;
+            incident[next[edgeB[e]]++] = e;
+        }
+
+        System.arraycopy(start, 0, next, 0, nNodes);
+
+        boolean[] used = new boolean[nEdges];
+        int segments = 0;
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (int first = 0; first < nNodes; first++) {
+                boolean odd = (start[first + 1] - start[first]) % 2 == 1;
+
+                if (pass == 0 && !odd) {
+                    continue;
+                }
+
+                while (true) {
+                    int e = nextUnusedEdge(first, start, next, incident, used);
+
+                    if (e < 0) {
+                        break;
+                    }
+
+                    // Walk a trail starting at this node
+                    if (segments == 0) {
+                        out.startPath("Edges", Color.black, 1);
+                    }
+
+                    out.moveTo(nodeX[first], nodeY[first]);
+                    int current = first;
+
+                    while (e >= 0) {
+                        used[e] = true;
+                        current = (edgeA[e] == current ? edgeB[e] : edgeA[e]);
+                        out.lineTo(nodeX[current], nodeY[current]);
+                        segments++;
+
+                        e = nextUnusedEdge(current, start, next, incident, used);
+
+                        if (segments == MAX_PATH_SEGMENTS) {
+                            out.endPath();
+                            segments = 0;
+
+                            if (e >= 0) {
+                                out.startPath("Edges", Color.black, 1);
+                                out.moveTo(nodeX[current], nodeY[current]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (segments > 0) {
+            out.endPath();
+        }
+    }
+
+    private static int nextUnusedEdge(int node, int[] start, int[] next, int[] incident, boolean[] used) {
+        while (next[node] < start[node + 1]) {
+            int e = incident[next[node]];
+
+            if (!used[e]) {
+                return e;
+            }
+
+            next[node]++;
+        }
+
+        return -1;
+    }
+
     public static void exportEmbeddedGraph(File file, EmbeddedGraph graph, boolean useIPE6) throws IOException {
-        try (BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+        exportEmbeddedGraph(file, graph, useIPE6, null);
+    }
+
+    /**
+     * Exports the given embedded graph. If faceColours is not null, every
+     * bounded face is drawn as a polygon filled with the colour it is mapped
+     * to, unless that colour is null.
+     *
+     * @param file
+     * @param graph
+     * @param useIPE6
+     * @param faceColours
+     * @throws IOException
+     */
+    public static void exportEmbeddedGraph(File file, EmbeddedGraph graph, boolean useIPE6, Function<Face, Color> faceColours) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            IPEWriter out = new IPEWriter(writer);
 
             if (useIPE6) {
                 out.write(IPE6HEADER);
@@ -345,48 +677,57 @@ public class IPEExporter {
                 out.write(IPE7HEADER);
             }
 
-            out.write(LAYERS);
-
             Transformation t = computeScaleFactors(graph.getVertices());
 
-            // Keep track of which edges we already exported
-            HashSet<HalfEdge> drawnHalfEdges = new HashSet<>(graph.getDarts().size());
+            if (faceColours == null) {
+                out.write(LAYERS);
+            } else {
+                out.write(FACE_LAYERS);
+
+                // Faces first, so they appear at the bottom
+                for (Face face : graph.getFaces()) {
+                    Color colour = (face.isOuterFace() ? null : faceColours.apply(face));
+
+                    if (colour != null && face.getDart() != null) {
+                        out.startFilledPath("Faces", colour);
+
+                        HalfEdge dart = face.getDart();
+                        out.moveTo(t.transformX(dart.getOrigin().getX()), t.transformY(dart.getOrigin().getY()));
+
+                        for (HalfEdge walkDart = dart.getNext(); walkDart != dart; walkDart = walkDart.getNext()) {
+                            out.lineTo(t.transformX(walkDart.getOrigin().getX()), t.transformY(walkDart.getOrigin().getY()));
+                        }
+
+                        out.closePath();
+                        out.endPath();
+                    }
+                }
+            }
+
+            // Mark the darts whose edge we already exported
+            for (HalfEdge e : graph.getDarts()) {
+                e.setMark(0);
+            }
 
             for (HalfEdge e : graph.getDarts()) {
-                if (!drawnHalfEdges.contains(e)) {
-                    exportEdge(out, t, e.getOrigin().getX(), e.getOrigin().getY(), e.getDestination().getX(), e.getDestination().getY(), "Edges", Color.black, 1);
+                if (e.getMark() == 0) {
+                    out.writeEdge(t, e.getOrigin().getX(), e.getOrigin().getY(), e.getDestination().getX(), e.getDestination().getY(), "Edges", Color.black, 1);
 
-                    drawnHalfEdges.add(e);
-                    drawnHalfEdges.add(e.getTwin());
+                    e.setMark(1);
+                    e.getTwin().setMark(1);
                 }
             }
 
             // Vertices last, so they appear on top
             for (EmbeddedVertex v : graph.getVertices()) {
-                exportVertex(out, t, v.getX(), v.getY(), "Vertices", Color.blue, useIPE6);
+                out.writeVertex(t, v.getX(), v.getY(), "Vertices", Color.blue, useIPE6);
             }
 
             out.write(POST_TAGS);
+            out.flush();
         }
     }
 
-    private static void exportVertex(BufferedWriter out, Transformation t, double x, double y, String layer, Color fillColour, boolean useIPE6) throws IOException {
-        float[] c = fillColour.getRGBColorComponents(null);
-        if (useIPE6) {
-            out.write(String.format("<mark layer=\"%s\" type=\"1\" pos=\"%f %f\" size=\"large\" stroke=\"black\" fill=\"%f %f %f\"/>\n", layer, t.transformX(x), t.transformY(y), c[0], c[1], c[2]));
-        } else {
-            out.write(String.format("<use layer=\"%s\" name=\"mark/fdisk(sfx)\" pos=\"%f %f\" size=\"large\" stroke=\"black\" fill=\"%f %f %f\"/>\n", layer, t.transformX(x), t.transformY(y), c[0], c[1], c[2]));
-        }
-    }
-
-    private static void exportEdge(BufferedWriter out, Transformation t, double x1, double y1, double x2, double y2, String layer, Color colour, double thickness) throws IOException {
-        float[] c = colour.getRGBColorComponents(null);
-        out.write(String.format("<path layer=\"%s\" pen=\"%f\" stroke=\"%f %f %f\">\n", layer, thickness, c[0], c[1], c[2]));
-        out.write(t.transformX(x1) + " " + t.transformY(y1) + " m\n");
-        out.write(t.transformX(x2) + " " + t.transformY(y2) + " l\n");
-        out.write("</path>\n");
-    }
-
     private static final double TARGET_MARGINS = 20;
     private static final double TARGET_WIDTH = 595; // Width of an IPE page
     private static final double TARGET_HEIGHT = 842; // Height of an IPE page
@@ -429,6 +770,8 @@ public class IPEExporter {
     }
 
     private final BufferedWriter outWriter;
+    private final IPEWriter out;
+    private final AsyncIPEWriter background; // null in synchronous mode
     private final List<String> layers;
     private final boolean ipe6mode;
     private Transformation scaleFactors = new Transformation();
@@ -446,12 +789,46 @@ public class IPEExporter {
             throw new IllegalArgumentException("At least one layer required.");
         }
 
-        return new IPEExporter(Files.newBufferedWriter(outputFile), layers, useIpe6);
+        return new IPEExporter(Files.newBufferedWriter(outputFile), layers, useIpe6, false);
+    }
+
+    /**
+     * Starts interactive mode. If asynchronous is true, draw calls only queue
+     * the element and return; formatting and writing happen on a background
+     * thread. Queued elements use the position and scaling at the time of the
+     * call. If writing fails, the next draw call or stopInteractiveMode throws
+     * an IOException.
+     *
+     * @param outputFile
+     * @param layers
+     * @param useIpe6
+     * @param asynchronous
+     * @return
+     * @throws IOException
+     */
+    public static IPEExporter startInteractiveMode(Path outputFile, List<String> layers, boolean useIpe6, boolean asynchronous) throws IOException {
+        if (layers == null || layers.isEmpty()) {
+            throw new IllegalArgumentException("At least one layer required.");
+        }
+
+        return new IPEExporter(Files.newBufferedWriter(outputFile), layers, useIpe6, asynchronous);
     }
 
     public void stopInteractiveMode() throws IOException {
-        outWriter.write(POST_TAGS);
-        outWriter.close();
+        try {
+            if (background == null) {
+                out.write(POST_TAGS);
+                out.flush();
+            } else {
+                try {
+                    background.submit(w -> w.write(POST_TAGS));
+                } finally {
+                    background.close();
+                }
+            }
+        } finally {
+            outWriter.close();
+        }
     }
 
     public void scaleDrawing(Collection<? extends Vertex> vertices) {
@@ -467,12 +844,26 @@ public class IPEExporter {
     }
 
     public void newPage() throws IOException {
-        outWriter.write(PAGE_BREAK);
-        writeLayers();
+        if (background == null) {
+            out.write(PAGE_BREAK);
+            writeLayers(out);
+        } else {
+            background.submit(w -> {
+                w.write(PAGE_BREAK);
+                writeLayers(w);
+            });
+        }
     }
 
     public void drawVertex(GraphVertex v, String layer, Color fillColour) throws IOException {
-        exportVertex(outWriter, scaleFactors, v.getX(), v.getY(), layer, fillColour, ipe6mode);
+        if (background == null) {
+            out.writeVertex(scaleFactors, v.getX(), v.getY(), layer, fillColour, ipe6mode);
+        } else {
+            Transformation t = scaleFactors;
+            double x = v.getX();
+            double y = v.getY();
+            background.submit(w -> w.writeVertex(t, x, y, layer, fillColour, ipe6mode));
+        }
     }
 
     public void drawVertex(GraphVertex v, String layer) throws IOException {
@@ -488,7 +879,16 @@ public class IPEExporter {
     }
 
     public void drawEdge(Edge e, String layer, Color colour, double thickness) throws IOException {
-        exportEdge(outWriter, scaleFactors, e.getVA().getX(), e.getVA().getY(), e.getVB().getX(), e.getVB().getY(), layer, colour, thickness);
+        if (background == null) {
+            out.writeEdge(scaleFactors, e.getVA().getX(), e.getVA().getY(), e.getVB().getX(), e.getVB().getY(), layer, colour, thickness);
+        } else {
+            Transformation t = scaleFactors;
+            double x1 = e.getVA().getX();
+            double y1 = e.getVA().getY();
+            double x2 = e.getVB().getX();
+            double y2 = e.getVB().getY();
+            background.submit(w -> w.writeEdge(t, x1, y1, x2, y2, layer, colour, thickness));
+        }
     }
 
     public void drawEdge(Edge e, String layer, Color colour) throws IOException {
@@ -519,42 +919,50 @@ public class IPEExporter {
         drawEdge(e, currentLayer, DEFAULT_EDGE_COLOUR, DEFAULT_EDGE_THICKNESS);
     }
 
-    private IPEExporter(BufferedWriter outWriter, List<String> layers, boolean ipe6mode) throws IOException {
+    private IPEExporter(BufferedWriter outWriter, List<String> layers, boolean ipe6mode, boolean asynchronous) throws IOException {
         this.outWriter = outWriter;
+        this.out = new IPEWriter(outWriter);
         this.layers = layers;
         currentLayer = layers.get(0);
         this.ipe6mode = ipe6mode;
 
         if (ipe6mode) {
-            outWriter.write(IPE6HEADER);
+            out.write(IPE6HEADER);
         } else {
-            outWriter.write(IPE7HEADER);
+            out.write(IPE7HEADER);
         }
 
-        writeLayers();
+        writeLayers(out);
+
+        // Start the background thread only after writing the header on this one
+        background = (asynchronous ? new AsyncIPEWriter(out) : null);
     }
 
-    private void writeLayers() throws IOException {
+    private void writeLayers(IPEWriter out) throws IOException {
         // Beginning of the IPE page
-        outWriter.write("<page>\n");
+        out.write("<page>\n");
 
         // Each layer
         for (String layer : layers) {
-            outWriter.write(String.format("<layer name=\"%s\"/>\n", layer));
+            out.write("<layer name=\"");
+            out.write(layer);
+            out.write("\"/>\n");
         }
 
         // The default view showing all layers
         boolean first = true;
-        outWriter.write("<view layers=\"");
+        out.write("<view layers=\"");
         for (String layer : layers) {
             if (!first) {
-                outWriter.write(" ");
+                out.write(" ");
             }
             first = false;
 
-            outWriter.write(layer);
+            out.write(layer);
         }
         // The active layer
-        outWriter.write(String.format("\" active=\"%s\"/>\n", layers.get(0)));
+        out.write("\" active=\"");
+        out.write(layers.get(0));
+        out.write("\"/>\n");
     }
 }
@@ -1,126 +1,327 @@
 package graphs.ipe;
 
-import graphs.graph.Edge;
 import graphs.graph.Graph;
 import graphs.graph.GraphVertex;
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
- * 
+ * Imports a graph from an IPE drawing. Every mark becomes a vertex and every
+ * straight segment of a path becomes an edge. Points closer than 0.01 are
+ * treated as the same vertex. The document is read in a single streaming pass,
+ * applying the transformation matrices of groups and objects.
+ * <p>
+ * The import can be restricted to a subset of the pages or layers. Pages that
+ * are not imported are skipped, and reading stops after the last selected
+ * page.
+ *
  * @author Wouter Meulemans
  * @author Sander Verdonschot <sander.verdonschot at gmail.com>
  */
 public class IPEImporter {
 
+    private static final double PRECISION = 0.01; // Low accuracy due to rounding errors in transformation =(
+    private static final double[] IDENTITY = new double[]{1, 0, 0, 1, 0, 0};
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private Set<String> selectedLayers = null; // null means all layers
+    private Set<Integer> selectedPages = null; // null means all pages
     private String currentLayer = null; // The layer we are currently working in
+    private VertexGrid vertexGrid; // Finds existing vertices near a point
+    private HashSet<Long> importedEdges; // The index pairs of the endpoints of all edges imported so far
+
+    /**
+     * Restricts the import to objects in the layers with the given names.
+     * Passing null imports all layers.
+     *
+     * @param layers
+     */
+    public void setLayers(Collection<String> layers) {
+        selectedLayers = (layers == null ? null : new HashSet<>(layers));
+    }
+
+    /**
+     * Restricts the import to the given pages, numbered from 1 as in IPE.
+     * Passing null imports all pages.
+     *
+     * @param pages
+     */
+    public void setPages(Collection<Integer> pages) {
+        selectedPages = (pages == null ? null : new HashSet<>(pages));
+    }
 
     public Graph importGraph(File file) throws IOException {
-        BufferedReader in = null;
         Graph graph = new Graph();
+        vertexGrid = new VertexGrid(graph.getVertices(), PRECISION);
+        importedEdges = new HashSet<>();
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
 
-        try {
-            in = new BufferedReader(new FileReader(file));
+            try {
+                importDocument(graph, reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Incorrect file format: " + ex.getMessage(), ex);
+        }
+
+        return graph;
+    }
+
+    private void importDocument(Graph graph, XMLStreamReader reader) throws XMLStreamException {
+        int lastPage = (selectedPages == null || selectedPages.isEmpty() ? Integer.MAX_VALUE : Collections.max(selectedPages));
+        int page = 0;
 
-            String line = in.readLine();
+        // Move to the root element
+        while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+        }
+
+        while (reader.hasNext() && page < lastPage) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if ("page".equals(reader.getLocalName())) {
+                    page++;
 
-            while (line != null) {
-                // Skip the ipestyle
-                if (line.contains("<ipestyle")) {
-                    while (!line.contains("</ipestyle>")) {
-                        line = in.readLine();
+                    if (selectedPages == null || selectedPages.contains(page)) {
+                        importPage(graph, reader);
+                    } else {
+                        skipElement(reader);
                     }
+                } else {
+                    // Skip the ipestyle, preamble, bitmaps, etc.
+                    skipElement(reader);
                 }
+            }
+        }
+    }
+
+    /**
+     * Imports the objects on the page whose start tag was just read, up to and
+     * including its end tag.
+     */
+    private void importPage(Graph graph, XMLStreamReader reader) throws XMLStreamException {
+        currentLayer = null;
+
+        // The combined transformation of all enclosing groups
+        Deque<double[]> groupTransforms = new ArrayDeque<>();
+        groupTransforms.push(IDENTITY);
+
+        while (!groupTransforms.isEmpty()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                // The end of a group, or of the page itself
+                groupTransforms.pop();
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                String element = reader.getLocalName();
+
+                if ("layer".equals(element)) {
+                    // Objects without layer attribute before the first one that has one are in the first layer
+                    if (currentLayer == null) {
+                        currentLayer = reader.getAttributeValue(null, "name");
+                    }
 
-                if (line.contains("layer=")) {
-                    setLayer(line);
+                    skipElement(reader);
+                    continue;
                 }
 
-                if (line.contains("<path")) {
-                    // This is a path consisting of one or more edges
-                    importEdges(graph, in, getMatrix(line));
-                } else if (line.contains("<mark") || (line.contains("<use") && line.contains("name=\"mark"))) {
-                    // This is a vertex
-                    if (line.contains("pos=")) {
-                        // Isolate the substring that contains the position
-                        int startIndex = line.indexOf("pos=") + "pos=\"".length();
-                        String pos = line.substring(startIndex, line.indexOf('"', startIndex));
-
-                        importVertex(graph, pos, getMatrix(line));
-                    } else {
-                        // No pos information - origin is default
-                        importVertex(graph, "0 0", getMatrix(line));
+                if (groupTransforms.size() == 1 && isObject(element)) {
+                    // Top-level objects are in the layer of the previous object, unless they specify one
+                    String layer = reader.getAttributeValue(null, "layer");
+
+                    if (layer != null) {
+                        currentLayer = layer;
                     }
                 }
 
-                line = in.readLine();
-            }
-        } finally {
-            if (in != null) {
-                in.close();
+                if (!isObject(element) || (selectedLayers != null && !selectedLayers.contains(currentLayer))) {
+                    skipElement(reader);
+                    continue;
+                }
+
+                double[] transform = compose(groupTransforms.peek(), getMatrix(reader.getAttributeValue(null, "matrix")));
+
+                switch (element) {
+                    case "group":
+                        groupTransforms.push(transform);
+                        break;
+                    case "path":
+                        // This is a path consisting of one or more edges
+                        importEdges(graph, reader.getElementText(), transform);
+                        break;
+                    case "use":
+                        String name = reader.getAttributeValue(null, "name");
+
+                        if (name != null && name.startsWith("mark")) {
+                            importMark(graph, reader, transform);
+                        } else {
+                            skipElement(reader);
+                        }
+                        break;
+                    case "mark":
+                        importMark(graph, reader, transform);
+                        break;
+                    default:
+                        skipElement(reader);
+                        break;
+                }
             }
         }
+    }
+
+    private static boolean isObject(String element) {
+        switch (element) {
+            case "group":
+            case "path":
+            case "use":
+            case "mark":
+            case "text":
+            case "image":
+            case "ref":
+                return true;
+            default:
+                return false;
+        }
+    }
 
-        return graph;
+    private void importMark(Graph graph, XMLStreamReader reader, double[] transform) throws XMLStreamException {
+        // This is a vertex. Without pos information, the origin is the default.
+        String pos = reader.getAttributeValue(null, "pos");
+        double[] coordinates = parseNumbers(pos == null ? "0 0" : pos, 2);
+
+        importVertex(graph, coordinates[0], coordinates[1], transform);
+        skipElement(reader);
     }
 
-    private void importEdges(Graph graph, BufferedReader in, double[] transform) throws IOException {
-        String line = in.readLine();
+    /**
+     * Imports the straight segments of the given path. Curved segments are
+     * imported as a straight edge between their endpoints, and ellipses and
+     * closed splines are ignored.
+     */
+    private void importEdges(Graph graph, String path, double[] transform) {
+        double[] operands = new double[8];
+        int nOperands = 0;
         GraphVertex prev = null;
         GraphVertex first = null;
 
-        while (!line.contains("</path>")) {
-            GraphVertex v;
+        int i = 0;
+
+        while (i < path.length()) {
+            char c = path.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetter(c)) {
+                i++;
+
+                switch (c) {
+                    case 'm':
+                        // Start a new subpath
+                        if (nOperands >= 2) {
+                            prev = importVertex(graph, operands[nOperands - 2], operands[nOperands - 1], transform);
+                            first = prev;
+                        }
+                        break;
+                    case 'l':
+                    case 'c':
+                    case 'q':
+                    case 's':
+                    case 'a':
+                        if (nOperands >= 2) {
+                            GraphVertex v = importVertex(graph, operands[nOperands - 2], operands[nOperands - 1], transform);
+                            addEdge(graph, prev, v);
+                            prev = v;
+                        }
+                        break;
+                    case 'h':
+                        // Return to the start
+                        addEdge(graph, prev, first);
+                        prev = first;
+                        break;
+                    default:
+                        break;
+                }
 
-            if (line.equals("h")) {
-                // Return to the start
-                v = first;
+                nOperands = 0;
             } else {
-                v = importVertex(graph, line, transform);
-            }
+                int end = i;
 
-            if (prev != null) {
-                Edge e = new Edge(prev, v);
+                while (end < path.length() && !Character.isWhitespace(path.charAt(end)) && !Character.isLetter(path.charAt(end))) {
+                    end++;
+                }
+
+                // Exponents ("1e-5") are part of the number
+                while (end < path.length() && (path.charAt(end) == 'e' || path.charAt(end) == 'E') && end + 1 < path.length() && !Character.isWhitespace(path.charAt(end + 1))) {
+                    end++;
 
-                if (prev != v && !graph.getEdges().contains(e)) {
-                    graph.addEdge(prev, v);
+                    while (end < path.length() && !Character.isWhitespace(path.charAt(end)) && !Character.isLetter(path.charAt(end))) {
+                        end++;
+                    }
                 }
-            } else {
-                first = v;
-            }
 
-            prev = v;
+                if (nOperands == operands.length) {
+                    // Only the last two operands matter
+                    System.arraycopy(operands, 2, operands, 0, operands.length - 2);
+                    nOperands -= 2;
+                }
 
-            line = in.readLine();
+                operands[nOperands] = Double.parseDouble(path.substring(i, end));
+                nOperands++;
+                i = end;
+            }
         }
     }
 
-    private GraphVertex importVertex(Graph graph, String line, double[] transform) {
-        String[] coords = line.split(" ");
-
-        assert coords.length == 2;
-
-        double x = Double.parseDouble(coords[0]);
-        double y = Double.parseDouble(coords[1]);
+    private void addEdge(Graph graph, GraphVertex prev, GraphVertex v) {
+        if (prev != null && v != null && prev != v && importedEdges.add(edgeKey(prev, v))) {
+            graph.addEdge(prev, v);
+        }
+    }
 
+    private GraphVertex importVertex(Graph graph, double x, double y, double[] transform) {
         // Apply the transformation
         double xt = transform[0] * x + transform[2] * y + transform[4];
         double yt = transform[1] * x + transform[3] * y + transform[5];
 
-        GraphVertex v = graph.getVertexAt(xt, yt, 0.01); // Low accuracy due to rounding errors in transformation =(
+        GraphVertex v = vertexGrid.getVertexAt(xt, yt);
 
         if (v == null) {
             v = new GraphVertex(xt, yt);
             graph.addVertex(v);
+            vertexGrid.add(v);
         }
 
         return v;
     }
 
+    private long edgeKey(GraphVertex vA, GraphVertex vB) {
+        long a = vertexGrid.indexOf(vA);
+        long b = vertexGrid.indexOf(vB);
+        return (Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
     /**
-     * Parses and returns the transformation matrix of this element.
+     * Parses and returns the given transformation matrix attribute.
      *
      * The matrix consists of 6 double values: {a, b, c, d, e, f}
      *
@@ -142,33 +343,145 @@ public class IPEImporter {
      * | b  d  f | x | y | = |bx + dy + f|
      * | 0  0  1 |   | 1 |   |     1     |
      *
-     * @param line
+     * @param matrix
      * @return
      */
-    private double[] getMatrix(String line) {
-        double[] transform = new double[]{1, 0, 0, 1, 0, 0}; // Identity matrix
+    private double[] getMatrix(String matrix) {
+        if (matrix == null) {
+            return IDENTITY;
+        } else {
+            return parseNumbers(matrix, 6);
+        }
+    }
+
+    /**
+     * Returns the matrix that first applies inner, then outer.
+     */
+    private static double[] compose(double[] outer, double[] inner) {
+        if (inner == IDENTITY) {
+            return outer;
+        } else if (outer == IDENTITY) {
+            return inner;
+        }
+
+        return new double[]{
+            outer[0] * inner[0] + outer[2] * inner[1],
+            outer[1] * inner[0] + outer[3] * inner[1],
+            outer[0] * inner[2] + outer[2] * inner[3],
+            outer[1] * inner[2] + outer[3] * inner[3],
+            outer[0] * inner[4] + outer[2] * inner[5] + outer[4],
+            outer[1] * inner[4] + outer[3] * inner[5] + outer[5]
+        };
+    }
 
-        if (line.contains("matrix=")) {
-            // Get the substring that contains the matrix
-            int startIndex = line.indexOf("matrix") + "matrix=\"".length();
-            String matrix = line.substring(startIndex, line.indexOf('"', startIndex));
+    private static double[] parseNumbers(String s, int count) {
+        double[] result = new double[count];
+        String[] parts = s.trim().split("\\s+");
 
-            // Split to obtain the 6 double values
-            String[] parts = matrix.split(" ");
+        assert parts.length == count;
 
-            assert parts.length == 6;
+        for (int i = 0; i < count; i++) {
+            result[i] = Double.parseDouble(parts[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Skips the rest of the element whose start tag was just read, including
+     * its end tag.
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
 
-            for (int i = 0; i < parts.length; i++) {
-                transform[i] = Double.parseDouble(parts[i]);
+        while (depth > 0) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
             }
         }
+    }
 
-        return transform;
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // IPE documents refer to ipe.dtd, which is not available
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
     }
 
-    private void setLayer(String line) {
-        // Get the substring that contains the layer
-        int startIndex = line.indexOf("layer") + "layer=\"".length();
-        currentLayer = line.substring(startIndex, line.indexOf('"', startIndex));
+    /**
+     * Hashes vertices into square cells whose side equals the snapping
+     * precision, so that all vertices near a point can be found by looking at
+     * the 3x3 block of cells around it. Vertices are identified by their index
+     * in the graph, so that lookups return the first vertex within range, just
+     * like Graph.getVertexAt.
+     */
+    private static class VertexGrid {
+
+        private final List<GraphVertex> vertices;
+        private final double precision;
+        private final HashMap<Long, List<Integer>> cells = new HashMap<>();
+        private final IdentityHashMap<GraphVertex, Integer> indices = new IdentityHashMap<>();
+
+        VertexGrid(List<GraphVertex> vertices, double precision) {
+            this.vertices = vertices;
+            this.precision = precision;
+        }
+
+        /**
+         * Adds the given vertex, which must be the last vertex of the graph.
+         */
+        void add(GraphVertex v) {
+            int index = vertices.size() - 1;
+            long key = cellKey(cell(v.getX()), cell(v.getY()));
+            List<Integer> cell = cells.get(key);
+
+            if (cell == null) {
+                cell = new ArrayList<>(1);
+                cells.put(key, cell);
+            }
+
+            cell.add(index);
+            indices.put(v, index);
+        }
+
+        int indexOf(GraphVertex v) {
+            return indices.get(v);
+        }
+
+        GraphVertex getVertexAt(double x, double y) {
+            long cx = cell(x);
+            long cy = cell(y);
+            int best = Integer.MAX_VALUE;
+
+            for (long i = cx - 1; i <= cx + 1; i++) {
+                for (long j = cy - 1; j <= cy + 1; j++) {
+                    List<Integer> cell = cells.get(cellKey(i, j));
+
+                    if (cell != null) {
+                        for (int index : cell) {
+                            if (index < best && vertices.get(index).isNear(x, y, precision)) {
+                                best = index;
+                            }
+                        }
+                    }
+                }
+            }
+
+            return best == Integer.MAX_VALUE ? null : vertices.get(best);
+        }
+
+        private long cell(double coordinate) {
+            return (long) Math.floor(coordinate / precision);
+        }
+
+        private static long cellKey(long cx, long cy) {
+            return (cx << 32) ^ (cy & 0xFFFFFFFFL);
+        }
     }
 }
@@ -0,0 +1,281 @@
+package graphs.ipe;
+
+import graphs.ipe.IPEExporter.Transformation;
+import java.awt.Color;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+
+/**
+ * Writes IPE elements into a reusable character buffer, which is passed on to
+ * the underlying writer in large blocks. Numbers are formatted directly into
+ * the buffer and colour strings are cached, so writing an element does not
+ * allocate. The output is the same as formatting the elements with
+ * String.format in a locale that uses '.' as decimal separator.
+ */
+class IPEWriter {
+
+    private static final int FLUSH_SIZE = 8192;
+    private static final int PRECISION = 6; // Number of decimals written by "%f"
+
+    private final Writer out;
+    private final StringBuilder buffer = new StringBuilder(FLUSH_SIZE + 512);
+    private final char[] chars = new char[FLUSH_SIZE];
+    private final HashMap<Color, String> colours = new HashMap<>();
+    // Scratch space for formatting numbers
+    private final StringBuilder number = new StringBuilder(32);
+    private final char[] digits = new char[32];
+
+    IPEWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Creates a writer that keeps all output in memory, until it is copied to
+     * another writer with {@link #write(IPEWriter)}.
+     */
+    IPEWriter() {
+        this(null);
+    }
+
+    void write(String s) throws IOException {
+        buffer.append(s);
+        flushIfFull();
+    }
+
+    /**
+     * Writes all output that was buffered by the given in-memory writer.
+     *
+     * @param other
+     * @throws IOException
+     */
+    void write(IPEWriter other) throws IOException {
+        flush();
+        other.copyTo(out);
+    }
+
+    void writeVertex(Transformation t, double x, double y, String layer, Color fillColour, boolean useIPE6) throws IOException {
+        if (useIPE6) {
+            buffer.append("<mark layer=\"").append(layer).append("\" type=\"1\" pos=\"");
+        } else {
+            buffer.append("<use layer=\"").append(layer).append("\" name=\"mark/fdisk(sfx)\" pos=\"");
+        }
+
+        appendFixed(t.transformX(x));
+        buffer.append(' ');
+        appendFixed(t.transformY(y));
+        buffer.append("\" size=\"large\" stroke=\"black\" fill=\"").append(colourString(fillColour)).append("\"/>\n");
+        flushIfFull();
+    }
+
+    void writeEdge(Transformation t, double x1, double y1, double x2, double y2, String layer, Color colour, double thickness) throws IOException {
+        startPath(layer, colour, thickness);
+        moveTo(t.transformX(x1), t.transformY(y1));
+        lineTo(t.transformX(x2), t.transformY(y2));
+        endPath();
+    }
+
+    /**
+     * Starts a path element. Its segments are added with moveTo and lineTo,
+     * in page coordinates, and the path is completed by endPath.
+     */
+    void startPath(String layer, Color colour, double thickness) {
+        buffer.append("<path layer=\"").append(layer).append("\" pen=\"");
+        appendFixed(thickness);
+        buffer.append("\" stroke=\"").append(colourString(colour)).append("\">\n");
+    }
+
+    /**
+     * Starts a path element that is filled with the given colour and has no
+     * stroke.
+     */
+    void startFilledPath(String layer, Color fillColour) {
+        buffer.append("<path layer=\"").append(layer).append("\" fill=\"").append(colourString(fillColour)).append("\">\n");
+    }
+
+    void moveTo(double x, double y) {
+        buffer.append(x).append(' ').append(y).append(" m\n");
+    }
+
+    void lineTo(double x, double y) {
+        buffer.append(x).append(' ').append(y).append(" l\n");
+    }
+
+    void closePath() {
+        buffer.append("h\n");
+    }
+
+    void endPath() throws IOException {
+        buffer.append("</path>\n");
+        flushIfFull();
+    }
+
+    /**
+     * Passes all buffered output on to the underlying writer.
+     *
+     * @throws IOException
+     */
+    void flush() throws IOException {
+        copyTo(out);
+        buffer.setLength(0);
+    }
+
+    private void copyTo(Writer writer) throws IOException {
+        int length = buffer.length();
+
+        for (int start = 0; start < length; start += chars.length) {
+            int end = Math.min(length, start + chars.length);
+            buffer.getChars(start, end, chars, 0);
+            writer.write(chars, 0, end - start);
+        }
+    }
+
+    private void flushIfFull() throws IOException {
+        if (out != null && buffer.length() >= FLUSH_SIZE) {
+            flush();
+        }
+    }
+
+    private String colourString(Color colour) {
+        String s = colours.get(colour);
+
+        if (s == null) {
+            float[] c = colour.getRGBColorComponents(null);
+            s = String.format("%f %f %f", c[0], c[1], c[2]);
+            colours.put(colour, s);
+        }
+
+        return s;
+    }
+
+    /**
+     * Appends the given value with six decimals, rounded like String.format
+     * does for "%f": half-up, starting from the shortest decimal
+     * representation of the value.
+     */
+    private void appendFixed(double value) {
+        if (Double.isNaN(value)) {
+            buffer.append("NaN");
+            return;
+        }
+
+        if (Double.compare(value, 0.0) < 0) {
+            // This includes -0.0, just like String.format
+            buffer.append('-');
+            value = -value;
+        }
+
+        if (Double.isInfinite(value)) {
+            buffer.append("Infinity");
+            return;
+        }
+
+        // Obtain the shortest decimal representation, as "ddd.ddd" or "d.dddE[-]dd"
+        number.setLength(0);
+        number.append(value);
+
+        int length = number.length();
+        int exponentStart = length;
+        int exponent = 0;
+
+        for (int i = 0; i < length; i++) {
+            if (number.charAt(i) == 'E') {
+                exponentStart = i;
+                break;
+            }
+        }
+
+        if (exponentStart < length) {
+            boolean negative = number.charAt(exponentStart + 1) == '-';
+
+            for (int i = exponentStart + (negative ? 2 : 1); i < length; i++) {
+                exponent = 10 * exponent + (number.charAt(i) - '0');
+            }
+
+            if (negative) {
+                exponent = -exponent;
+            }
+        }
+
+        // Collect the digits; the value is 0.d1d2d3... * 10^decimalExponent
+        int nDigits = 0;
+        int pointPosition = -1;
+
+        for (int i = 0; i < exponentStart; i++) {
+            char c = number.charAt(i);
+
+            if (c == '.') {
+                pointPosition = nDigits;
+            } else {
+                digits[nDigits] = c;
+                nDigits++;
+            }
+        }
+
+        int decimalExponent = (pointPosition < 0 ? nDigits : pointPosition) + exponent;
+        int leadingZeros = 0;
+
+        while (leadingZeros < nDigits && digits[leadingZeros] == '0') {
+            leadingZeros++;
+        }
+
+        System.arraycopy(digits, leadingZeros, digits, 0, nDigits - leadingZeros);
+        nDigits -= leadingZeros;
+        decimalExponent -= leadingZeros;
+
+        while (nDigits > 0 && digits[nDigits - 1] == '0') {
+            nDigits--;
+        }
+
+        // Round half-up to the required number of decimals
+        int keep = decimalExponent + PRECISION;
+
+        if (nDigits > 0 && keep < nDigits) {
+            if (keep < 0) {
+                nDigits = 0;
+            } else {
+                boolean roundUp = digits[keep] >= '5';
+                nDigits = keep;
+
+                if (roundUp) {
+                    int i = keep - 1;
+
+                    while (i >= 0 && digits[i] == '9') {
+                        digits[i] = '0';
+                        i--;
+                    }
+
+                    if (i >= 0) {
+                        digits[i]++;
+                    } else {
+                        // Carry out of the first digit
+                        System.arraycopy(digits, 0, digits, 1, nDigits);
+                        digits[0] = '1';
+                        nDigits++;
+                        decimalExponent++;
+                    }
+                }
+            }
+        }
+
+        if (nDigits == 0) {
+            decimalExponent = 0;
+        }
+
+        // Integer part
+        if (decimalExponent <= 0) {
+            buffer.append('0');
+        } else {
+            for (int i = 0; i < decimalExponent; i++) {
+                buffer.append(i < nDigits ? digits[i] : '0');
+            }
+        }
+
+        // Fractional part
+        buffer.append('.');
+
+        for (int i = decimalExponent; i < decimalExponent + PRECISION; i++) {
+            buffer.append(i >= 0 && i < nDigits ? digits[i] : '0');
+        }
+    }
+}